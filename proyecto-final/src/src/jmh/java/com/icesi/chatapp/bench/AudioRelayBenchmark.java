@@ -0,0 +1,93 @@
+package com.icesi.chatapp.bench;
+
+import com.icesi.chatapp.managers.GroupCallRegistry;
+import com.icesi.chatapp.managers.GroupManager;
+import com.icesi.chatapp.websocket.AudioWebSocketServer;
+import com.icesi.chatapp.websocket.ControlMessage;
+import org.openjdk.jmh.annotations.*;
+
+import javax.websocket.Session;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Un frame de voz de un participante retransmitido al resto de la llamada
+// (sin cabecera de secuencia): detector de voz, vistas de solo lectura y un
+// envío asíncrono por oyente sobre sesiones en proceso. En modo SFU se suma
+// la selección de hablantes por oyente.
+// frameMillis fija el tamaño del frame y con ello los frames por segundo
+// que genera cada hablante (1000 / frameMillis).
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AudioRelayBenchmark {
+    private static final String CALL = "bench-call";
+
+    @Param({"2", "8", "32"})
+    public int participants;
+
+    @Param({"10", "20", "60"})
+    public int frameMillis;
+
+    @Param({"RELAY", "SFU"})
+    public String mode;
+
+    private final LongAdder sentFrames = new LongAdder();
+    // Un endpoint por sesión, como los crea Tyrus
+    private AudioWebSocketServer[] endpoints;
+    private Session[] sessions;
+    private ByteBuffer frame;
+    private PrintStream stdout;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        // Todos los participantes son miembros del grupo de la llamada
+        GroupManager groups = new GroupManager();
+        groups.createGroup("grupo", "user0");
+        for (int i = 1; i < participants; i++) {
+            groups.addMember("grupo", "user" + i);
+        }
+        AudioWebSocketServer.setGroupCalls(new GroupCallRegistry(groups));
+
+        endpoints = new AudioWebSocketServer[participants];
+        sessions = new Session[participants];
+        for (int i = 0; i < participants; i++) {
+            endpoints[i] = new AudioWebSocketServer();
+            sessions[i] = InProcessStubs.session("s" + i, sentFrames);
+            endpoints[i].onOpen(sessions[i], "user" + i);
+        }
+        control(0, ControlMessage.START_GROUP_CALL, CALL, "grupo");
+        for (int i = 1; i < participants; i++) {
+            control(i, ControlMessage.JOIN_GROUP_CALL, CALL, "grupo");
+        }
+        control(0, ControlMessage.SET_CALL_MODE, CALL, mode);
+        frame = InProcessStubs.voiceFrame(frameMillis);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        control(0, ControlMessage.END_CALL, CALL);
+        for (int i = 0; i < participants; i++) {
+            endpoints[i].onClose(sessions[i], "user" + i);
+        }
+        System.setOut(stdout);
+    }
+
+    private void control(int participant, byte opcode, String... args) {
+        endpoints[participant].onBinaryMessage(ControlMessage.encode(opcode, args), sessions[participant]);
+    }
+
+    @Benchmark
+    public void relayFrame() {
+        // Tyrus entrega un buffer propio por mensaje; aquí, una vista nueva
+        endpoints[0].onBinaryMessage(frame.duplicate(), sessions[0]);
+    }
+}
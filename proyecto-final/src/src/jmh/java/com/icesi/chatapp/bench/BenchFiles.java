@@ -0,0 +1,32 @@
+package com.icesi.chatapp.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+// Directorios temporales por trial: los benchmarks nunca tocan chat_history/
+final class BenchFiles {
+
+    private BenchFiles() {}
+
+    static File tempDir(String prefix) {
+        try {
+            return Files.createTempDirectory("chat-bench-" + prefix).toFile();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static void delete(File dir) {
+        if (dir == null) return;
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            // Ignorar: es un directorio temporal
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.icesi.chatapp.bench;
+
+import com.icesi.chatapp.managers.GroupManager;
+import com.icesi.chatapp.repos.AudioStore;
+import com.icesi.chatapp.repos.IMessageRepo;
+import com.icesi.chatapp.repos.MessageRecord;
+import com.icesi.chatapp.repos.OfflineInbox;
+import com.icesi.chatapp.services.ChatServiceImpl;
+import com.zeroc.Ice.Current;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Un mensaje de grupo repartido a todos los miembros conectados. Los callbacks
+// son dobles en proceso y el repositorio no escribe nada, así que se mide solo
+// el fan-out: agrupador, colas de salida y la invocación asíncrona.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GroupFanoutBenchmark {
+    private static final String GROUP = "bench";
+
+    @Param({"10", "100", "1000"})
+    public int groupSize;
+
+    // 0: un onMessageReceived por mensaje; >0: lotes por destinatario
+    @Param({"0", "5"})
+    public long deliveryWindowMs;
+
+    private final LongAdder delivered = new LongAdder();
+    private final Current current = new Current();
+    private File dir;
+    private ChatServiceImpl service;
+    private PrintStream stdout;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // El servicio imprime cada mensaje; en el benchmark se descarta esa salida
+        stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        dir = BenchFiles.tempDir("fanout");
+        GroupManager groups = new GroupManager();
+        service = new ChatServiceImpl(new NullRepo(), new AudioStore(new File(dir, "audio")), groups,
+                new OfflineInbox(new File(dir, "inbox")), deliveryWindowMs);
+
+        groups.createGroup(GROUP, "user0");
+        for (int i = 0; i < groupSize; i++) {
+            String user = "user" + i;
+            service.registerUser(user, InProcessStubs.chatCallback(delivered), current);
+            groups.addMember(GROUP, user);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        service.close();
+        BenchFiles.delete(dir);
+        System.setOut(stdout);
+    }
+
+    @Benchmark
+    public boolean sendGroupMessage() {
+        return service.sendGroupMessageAsync("user0", GROUP, "hola a todos", current).toCompletableFuture().join();
+    }
+
+    // Repositorio que no guarda nada
+    private static class NullRepo implements IMessageRepo {
+        @Override public void savePrivateMessage(String from, String to, String content) {}
+        @Override public List<MessageRecord> getPrivateHistory(String user1, String user2) { return Collections.emptyList(); }
+        @Override public List<MessageRecord> getPrivateHistoryPage(String user1, String user2, long beforeTimestamp, long beforeSeq, int limit) { return Collections.emptyList(); }
+        @Override public void saveGroupMessage(String from, String groupName, String content) {}
+        @Override public List<MessageRecord> getGroupHistory(String groupName) { return Collections.emptyList(); }
+        @Override public List<MessageRecord> getGroupHistoryPage(String groupName, long beforeTimestamp, long beforeSeq, int limit) { return Collections.emptyList(); }
+        @Override public void saveAudioMessage(String from, String to, String audioId) {}
+        @Override public void saveGroupAudioMessage(String from, String groupName, String audioId) {}
+        @Override public CompletableFuture<Long> saveAsync(MessageRecord record) { return CompletableFuture.completedFuture(0L); }
+        @Override public List<MessageRecord> searchMessages(String user, Set<String> groups, String query, int limit) { return Collections.emptyList(); }
+    }
+}
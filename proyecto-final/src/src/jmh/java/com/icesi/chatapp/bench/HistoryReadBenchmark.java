@@ -0,0 +1,67 @@
+package com.icesi.chatapp.bench;
+
+import com.icesi.chatapp.repos.IMessageRepo;
+import com.icesi.chatapp.repos.MessageHistory;
+import com.icesi.chatapp.repos.MessageRecord;
+import com.icesi.chatapp.repos.SegmentedMessageLog;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Lectura de una conversación de distintos largos: el repositorio de texto
+// lee y parsea el archivo entero; el log segmentado salta con su índice.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HistoryReadBenchmark {
+    private static final int PAGE_SIZE = 50;
+
+    @Param({"legacy", "segmented"})
+    public String repo;
+
+    @Param({"100", "1000", "10000"})
+    public int historyLength;
+
+    private File dir;
+    private IMessageRepo messages;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = BenchFiles.tempDir("read");
+        messages = "legacy".equals(repo)
+                ? new MessageHistory(new File(dir, "history"), new File(dir, "audio"))
+                : new SegmentedMessageLog(new File(dir, "log"), 64L * 1024 * 1024,
+                        SegmentedMessageLog.FsyncPolicy.NEVER, 1000);
+
+        long start = System.currentTimeMillis() - historyLength * 1000L;
+        for (int i = 0; i < historyLength; i++) {
+            String from = i % 2 == 0 ? "ana" : "bob";
+            String to = i % 2 == 0 ? "bob" : "ana";
+            messages.saveAsync(MessageRecord.text(start + i * 1000L, from, to, MessageRecord.Type.PRIVATE,
+                    "mensaje número " + i + " de la conversación de prueba")).join();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (messages instanceof SegmentedMessageLog log) {
+            log.close();
+        }
+        BenchFiles.delete(dir);
+    }
+
+    @Benchmark
+    public List<MessageRecord> fullHistory() {
+        return messages.getPrivateHistory("ana", "bob");
+    }
+
+    @Benchmark
+    public List<MessageRecord> latestPage() {
+        return messages.getPrivateHistoryPage("ana", "bob", 0, 0, PAGE_SIZE);
+    }
+}
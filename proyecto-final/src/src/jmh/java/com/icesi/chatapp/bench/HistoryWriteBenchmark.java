@@ -0,0 +1,60 @@
+package com.icesi.chatapp.bench;
+
+import com.icesi.chatapp.repos.IMessageRepo;
+import com.icesi.chatapp.repos.MessageHistory;
+import com.icesi.chatapp.repos.SegmentedMessageLog;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+// Costo de guardar un mensaje: el archivo de texto (abrir, escribir y cerrar en
+// cada mensaje) contra el log segmentado (cola al hilo escritor y group commit).
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HistoryWriteBenchmark {
+
+    @Param({"legacy", "segmented"})
+    public String repo;
+
+    @Param({"64", "1024"})
+    public int messageLength;
+
+    private File dir;
+    private IMessageRepo messages;
+    private String content;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = BenchFiles.tempDir("write");
+        messages = "legacy".equals(repo)
+                ? new MessageHistory(new File(dir, "history"), new File(dir, "audio"))
+                : new SegmentedMessageLog(new File(dir, "log"), 64L * 1024 * 1024,
+                        SegmentedMessageLog.FsyncPolicy.INTERVAL, 1000);
+        content = "x".repeat(messageLength);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (messages instanceof SegmentedMessageLog log) {
+            log.close();
+        }
+        BenchFiles.delete(dir);
+    }
+
+    @Benchmark
+    public void savePrivateMessage() {
+        messages.savePrivateMessage("ana", "bob", content);
+    }
+
+    // Varios remitentes a la vez: aquí es donde el group commit agrupa escrituras
+    @Benchmark
+    @Threads(8)
+    public void savePrivateMessageContended() {
+        messages.savePrivateMessage("ana", "bob", content);
+    }
+}
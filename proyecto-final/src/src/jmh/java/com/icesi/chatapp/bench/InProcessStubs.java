@@ -0,0 +1,108 @@
+package com.icesi.chatapp.bench;
+
+import Chat.ChatCallbackPrx;
+
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Dobles en proceso de los extremos remotos: un callback de Ice que completa
+// cada invocación en el acto y una sesión WebSocket cuyos envíos terminan sin
+// red. Así los benchmarks miden solo el código del servidor.
+final class InProcessStubs {
+
+    private InProcessStubs() {}
+
+    // Cada *Async cuenta una invocación y devuelve un futuro ya completo
+    static ChatCallbackPrx chatCallback(LongAdder invocations) {
+        return (ChatCallbackPrx) Proxy.newProxyInstance(ChatCallbackPrx.class.getClassLoader(),
+                new Class<?>[]{ChatCallbackPrx.class}, (proxy, method, args) -> {
+                    if (method.getDeclaringClass() == Object.class) return objectMethod(proxy, method, args);
+                    if (method.getName().endsWith("Async")) {
+                        invocations.increment();
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    // ice_fixed, ice_oneway, ...: el mismo proxy
+                    if (method.getReturnType().isInstance(proxy)) return proxy;
+                    return defaultValue(method.getReturnType());
+                });
+    }
+
+    // Sesión abierta cuyo envío asíncrono avisa de inmediato que terminó bien
+    static Session session(String id, LongAdder sentFrames) {
+        Map<String, Object> properties = new ConcurrentHashMap<>();
+        SendResult ok = new SendResult();
+
+        RemoteEndpoint.Async async = (RemoteEndpoint.Async) Proxy.newProxyInstance(
+                RemoteEndpoint.Async.class.getClassLoader(), new Class<?>[]{RemoteEndpoint.Async.class},
+                (proxy, method, args) -> {
+                    if (method.getDeclaringClass() == Object.class) return objectMethod(proxy, method, args);
+                    if (method.getName().equals("sendBinary") && args.length == 2) {
+                        ((ByteBuffer) args[0]).position(((ByteBuffer) args[0]).limit());
+                        sentFrames.increment();
+                        ((SendHandler) args[1]).onResult(ok);
+                        return null;
+                    }
+                    return defaultValue(method.getReturnType());
+                });
+
+        RemoteEndpoint.Basic basic = (RemoteEndpoint.Basic) Proxy.newProxyInstance(
+                RemoteEndpoint.Basic.class.getClassLoader(), new Class<?>[]{RemoteEndpoint.Basic.class},
+                (proxy, method, args) -> method.getDeclaringClass() == Object.class
+                        ? objectMethod(proxy, method, args) : defaultValue(method.getReturnType()));
+
+        return (Session) Proxy.newProxyInstance(Session.class.getClassLoader(), new Class<?>[]{Session.class},
+                (proxy, method, args) -> {
+                    if (method.getDeclaringClass() == Object.class) return objectMethod(proxy, method, args);
+                    return switch (method.getName()) {
+                        case "getUserProperties" -> properties;
+                        case "isOpen" -> true;
+                        case "getId" -> id;
+                        case "getAsyncRemote" -> async;
+                        case "getBasicRemote" -> basic;
+                        default -> defaultValue(method.getReturnType());
+                    };
+                });
+    }
+
+    // PCM de 16 bits con un tono fuerte: supera siempre el detector de voz
+    static ByteBuffer voiceFrame(int frameMillis) {
+        int samples = 16 * frameMillis;
+        ByteBuffer frame = ByteBuffer.allocate(samples * 2);
+        for (int i = 0; i < samples; i++) {
+            short sample = (short) (8000 * Math.sin(2 * Math.PI * 440 * i / 16000.0));
+            frame.put((byte) sample);
+            frame.put((byte) (sample >> 8));
+        }
+        frame.flip();
+        return frame;
+    }
+
+    private static Object objectMethod(Object proxy, Method method, Object[] args) {
+        return switch (method.getName()) {
+            case "equals" -> proxy == args[0];
+            case "hashCode" -> System.identityHashCode(proxy);
+            default -> "stub@" + Integer.toHexString(System.identityHashCode(proxy));
+        };
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) return false;
+        if (type == int.class) return 0;
+        if (type == long.class) return 0L;
+        if (type == short.class) return (short) 0;
+        if (type == byte.class) return (byte) 0;
+        if (type == float.class) return 0f;
+        if (type == double.class) return 0d;
+        if (type == char.class) return '\0';
+        return null;
+    }
+}
@@ -1,53 +1,120 @@
 package com.icesi.chatapp.Server;
 
 import com.zeroc.Ice.*;
+import Chat.ClusterNodePrx;
+import com.icesi.chatapp.cluster.ClusterNodeImpl;
+import com.icesi.chatapp.cluster.ClusterRouter;
 import com.icesi.chatapp.services.ChatServiceImpl;
-import com.icesi.chatapp.repos.MessageHistory;
-import com.icesi.chatapp.repos.IMessageRepo;
+import com.icesi.chatapp.managers.GroupManager;
+import com.icesi.chatapp.managers.UserManager;
+import com.icesi.chatapp.metrics.Log;
+import com.icesi.chatapp.metrics.MetricsEndpoint;
+import com.icesi.chatapp.metrics.MetricsInterceptor;
+import com.icesi.chatapp.repos.AudioStore;
+import com.icesi.chatapp.repos.GroupStore;
+import com.icesi.chatapp.repos.OfflineInbox;
+import com.icesi.chatapp.repos.SegmentedMessageLog;
 import com.icesi.chatapp.websocket.AudioWebSocketServer;
 
+import java.util.Map;
+import java.util.TreeMap;
+
 public class Server {
     public static void main(String[] args) {
         org.glassfish.tyrus.server.Server wsServer = null;
 
-        try (Communicator communicator = Util.initialize(args)) {
+        ServerConfig config = ServerConfig.load(args);
+        Log.setLevel(config.getLogLevel());
+        MetricsEndpoint metrics = null;
 
-            communicator.getProperties().setProperty("Ice.ThreadPool.Server.Size", "5");
+        try (Communicator communicator = Util.initialize(config.toInitializationData())) {
 
-            IMessageRepo messageRepo = new MessageHistory();
-            ChatServiceImpl chatService = new ChatServiceImpl(messageRepo);
+            System.out.println(" Configuración: " + config.describe());
 
-            // Servidor Ice (puerto 9099)
-            ObjectAdapter adapter = communicator.createObjectAdapterWithEndpoints(
-                    "ChatAdapter",
-                    "ws -h localhost -p 9099"
-            );
+            SegmentedMessageLog messageRepo = new SegmentedMessageLog();
+            GroupStore groupStore = new GroupStore();
+            GroupManager groupManager = new GroupManager(groupStore);
+            OfflineInbox offlineInbox = new OfflineInbox();
+            UserManager userManager = new UserManager(config.getOutboundQueueDepth(),
+                    config.getOutboundMaxInFlight(), config.getOutboundOverflowPolicy());
+            ChatServiceImpl chatService = new ChatServiceImpl(messageRepo, new AudioStore(), groupManager,
+                    offlineInbox, userManager, config.getDeliveryWindowMillis());
 
-            adapter.add(chatService, Util.stringToIdentity("ChatService"));
+            // Servidor Ice (ChatAdapter.Endpoints, por defecto puerto 9099)
+            ObjectAdapter adapter = communicator.createObjectAdapter("ChatAdapter");
+
+            chatService.registerMetrics();
+            metrics = MetricsEndpoint.start(config.getMetricsPort());
+            if (config.getMetricsPort() > 0) {
+                System.out.println(" Métricas en http://localhost:" + config.getMetricsPort() + "/metrics");
+            }
+
+            // El interceptor mide cada operación antes de pasarla al servicio
+            adapter.add(new MetricsInterceptor(chatService), Util.stringToIdentity("ChatService"));
             adapter.activate();
 
-            System.out.println(" Servidor Ice iniciado en ws://localhost:9099");
+            System.out.println(" Servidor Ice iniciado en " + config.getChatEndpoints());
+
+            if (config.isClustered()) {
+                startCluster(communicator, config, chatService);
+            }
 
-            // Servidor WebSocket para audio (puerto 9098)
+            // Servidor WebSocket para audio (Chat.WebSocket.Port, por defecto 9098).
+            // Usa los mismos grupos que Ice para invitar y autorizar llamadas grupales
+            AudioWebSocketServer.setGroupCalls(chatService.getGroupCalls());
             wsServer = new org.glassfish.tyrus.server.Server(
                     "localhost",
-                    9098,
+                    config.getWebSocketPort(),
                     "/ws",
                     null,
                     AudioWebSocketServer.class
             );
             wsServer.start();
 
-            System.out.println(" Servidor WebSocket iniciado en ws://localhost:9098");
+            System.out.println(" Servidor WebSocket iniciado en ws://localhost:" + config.getWebSocketPort());
 
             communicator.waitForShutdown();
 
             if (wsServer != null) {
                 wsServer.stop();
             }
+            messageRepo.close();
+            chatService.close();
+            offlineInbox.close();
+            System.out.println(" " + chatService.getHistoryCache().describe());
+
+            // Un snapshot al salir deja el journal vacío para el próximo arranque
+            groupManager.compact();
+            groupStore.close();
 
         } catch (java.lang.Exception e) {
             e.printStackTrace();
+        } finally {
+            if (metrics != null) {
+                metrics.close();
+            }
+            config.close();
+            Log.flush();
         }
     }
+
+    // Los nodos se hablan por ClusterAdapter (ClusterAdapter.Endpoints); los
+    // proxies de los demás vienen de Chat.Cluster.Peer.<id>
+    private static void startCluster(Communicator communicator, ServerConfig config, ChatServiceImpl chatService) {
+        Map<String, ClusterNodePrx> peers = new TreeMap<>();
+        config.getClusterPeers().forEach((node, proxy) ->
+                peers.put(node, ClusterNodePrx.uncheckedCast(communicator.stringToProxy(proxy))));
+
+        ClusterRouter router = new ClusterRouter(config.getClusterNodeId(), peers,
+                chatService::getLocalUsers, chatService::deliverLocally);
+        ClusterNodeImpl clusterNode = new ClusterNodeImpl(router, chatService);
+        chatService.setCluster(router);
+
+        ObjectAdapter clusterAdapter = communicator.createObjectAdapter(ServerConfig.CLUSTER_ADAPTER);
+        clusterAdapter.add(clusterNode, Util.stringToIdentity("ClusterNode"));
+        clusterAdapter.activate();
+
+        System.out.println(" Nodo " + router.getNodeId() + " del clúster, nodos vecinos: " + peers.keySet());
+        clusterNode.joinCluster();
+    }
 }
@@ -0,0 +1,189 @@
+package com.icesi.chatapp.Server;
+
+import com.icesi.chatapp.managers.OutboundQueue;
+import com.zeroc.Ice.Connection;
+import com.zeroc.Ice.InitializationData;
+import com.zeroc.Ice.ObjectAdapter;
+import com.zeroc.Ice.Properties;
+import com.zeroc.Ice.Util;
+
+import java.io.File;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Configuración del servidor: valores por defecto, luego config.server (si
+// existe) y por último la línea de comandos con la sintaxis de Ice, p. ej.
+//   gradlew runServer --args="--Ice.ThreadPool.Server.SizeMax=64 --Chat.Dispatch=virtual"
+// Todo se fija antes de crear el communicator; cambiar Ice.ThreadPool.* después
+// de inicializarlo no tiene efecto.
+public class ServerConfig {
+    public static final String CONFIG_FILE = "config.server";
+
+    public static final String DISPATCH = "Chat.Dispatch";
+    public static final String DELIVERY_WINDOW = "Chat.DeliveryWindowMs";
+    public static final String OUTBOUND_QUEUE_DEPTH = "Chat.Outbound.QueueDepth";
+    public static final String OUTBOUND_MAX_IN_FLIGHT = "Chat.Outbound.MaxInFlight";
+    public static final String OUTBOUND_OVERFLOW = "Chat.Outbound.Overflow";
+    public static final String LOG_LEVEL = "Chat.LogLevel";
+    public static final String METRICS_PORT = "Chat.Metrics.Port";
+    public static final String WEBSOCKET_PORT = "Chat.WebSocket.Port";
+    public static final String CLUSTER_NODE = "Chat.Cluster.NodeId";
+    public static final String CLUSTER_PEER_PREFIX = "Chat.Cluster.Peer.";
+    public static final String CLUSTER_ADAPTER = "ClusterAdapter";
+
+    private final Properties properties;
+    private ExecutorService virtualThreads;
+
+    private ServerConfig(Properties properties) {
+        this.properties = properties;
+    }
+
+    public static ServerConfig load(String[] args) {
+        Properties properties = Util.createProperties();
+
+        // Los manejadores hacen E/S de archivos y esperan callbacks: el pool
+        // puede crecer bajo carga en lugar de quedarse fijo en 5 hilos
+        properties.setProperty("Ice.ThreadPool.Server.Size", "5");
+        properties.setProperty("Ice.ThreadPool.Server.SizeMax", "32");
+        properties.setProperty("Ice.ThreadPool.Client.Size", "2");
+        properties.setProperty("Ice.ThreadPool.Client.SizeMax", "8");
+        properties.setProperty(DISPATCH, "pool");
+        properties.setProperty(DELIVERY_WINDOW, "5");
+        properties.setProperty(OUTBOUND_QUEUE_DEPTH, "256");
+        properties.setProperty(OUTBOUND_MAX_IN_FLIGHT, "32");
+        properties.setProperty(OUTBOUND_OVERFLOW, "drop_oldest");
+        properties.setProperty(LOG_LEVEL, "info");
+        properties.setProperty(METRICS_PORT, "9097");
+        properties.setProperty("ChatAdapter.Endpoints", "ws -h localhost -p 9099");
+        properties.setProperty(WEBSOCKET_PORT, "9098");
+        // Entre nodos el orden importa (online antes que offline, create antes que add):
+        // Serialize despacha en orden las peticiones de cada conexión
+        properties.setProperty("ClusterAdapter.ThreadPool.Size", "4");
+        properties.setProperty("ClusterAdapter.ThreadPool.SizeMax", "16");
+        properties.setProperty("ClusterAdapter.ThreadPool.Serialize", "1");
+
+        if (new File(CONFIG_FILE).exists()) {
+            properties.load(CONFIG_FILE);
+        }
+
+        // Las opciones --Ice.* y --Chat.* de la línea de comandos tienen prioridad
+        properties.parseCommandLineOptions("Ice", args);
+        properties.parseCommandLineOptions("Chat", args);
+        return new ServerConfig(properties);
+    }
+
+    public InitializationData toInitializationData() {
+        InitializationData initData = new InitializationData();
+        initData.properties = properties;
+
+        if (useVirtualThreads()) {
+            // Cada despacho corre en su propio hilo virtual: un manejador bloqueado
+            // en disco o esperando un callback ya no ocupa un hilo del pool de Ice.
+            // Lo que llega por ClusterAdapter se queda en su pool serializado, que
+            // es lo que mantiene en orden las peticiones de cada nodo
+            virtualThreads = Executors.newVirtualThreadPerTaskExecutor();
+            initData.dispatcher = (runnable, connection) -> {
+                if (isClusterConnection(connection)) {
+                    runnable.run();
+                } else {
+                    virtualThreads.execute(runnable);
+                }
+            };
+        }
+        return initData;
+    }
+
+    private static boolean isClusterConnection(Connection connection) {
+        ObjectAdapter adapter = connection != null ? connection.getAdapter() : null;
+        return adapter != null && CLUSTER_ADAPTER.equals(adapter.getName());
+    }
+
+    public boolean useVirtualThreads() {
+        return "virtual".equalsIgnoreCase(properties.getPropertyWithDefault(DISPATCH, "pool"));
+    }
+
+    public long getDeliveryWindowMillis() {
+        return properties.getPropertyAsIntWithDefault(DELIVERY_WINDOW, 5);
+    }
+
+    // Cola de salida de cada usuario: eventos pendientes, callbacks sin respuesta
+    // y qué hacer cuando se llena (drop_oldest o disconnect)
+    public int getOutboundQueueDepth() {
+        return properties.getPropertyAsIntWithDefault(OUTBOUND_QUEUE_DEPTH, 256);
+    }
+
+    public int getOutboundMaxInFlight() {
+        return properties.getPropertyAsIntWithDefault(OUTBOUND_MAX_IN_FLIGHT, 32);
+    }
+
+    public OutboundQueue.OverflowPolicy getOutboundOverflowPolicy() {
+        String value = properties.getPropertyWithDefault(OUTBOUND_OVERFLOW, "drop_oldest");
+        try {
+            return OutboundQueue.OverflowPolicy.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(OUTBOUND_OVERFLOW + " inválido: " + value
+                    + " (drop_oldest o disconnect)");
+        }
+    }
+
+    public String getLogLevel() {
+        return properties.getPropertyWithDefault(LOG_LEVEL, "info");
+    }
+
+    // 0 desactiva el endpoint HTTP (JMX sigue disponible)
+    public int getMetricsPort() {
+        return properties.getPropertyAsIntWithDefault(METRICS_PORT, 9097);
+    }
+
+    public int getWebSocketPort() {
+        return properties.getPropertyAsIntWithDefault(WEBSOCKET_PORT, 9098);
+    }
+
+    public String getChatEndpoints() {
+        return properties.getProperty("ChatAdapter.Endpoints");
+    }
+
+    // Vacío si el servidor corre solo
+    public String getClusterNodeId() {
+        return properties.getPropertyWithDefault(CLUSTER_NODE, "");
+    }
+
+    public boolean isClustered() {
+        return !getClusterNodeId().isEmpty();
+    }
+
+    // Id de nodo -> proxy, sin incluir a este nodo
+    public Map<String, String> getClusterPeers() {
+        Map<String, String> peers = new TreeMap<>();
+        properties.getPropertiesForPrefix(CLUSTER_PEER_PREFIX).forEach((key, proxy) -> {
+            String node = key.substring(CLUSTER_PEER_PREFIX.length());
+            if (!node.equals(getClusterNodeId())) {
+                peers.put(node, proxy);
+            }
+        });
+        return peers;
+    }
+
+    public String describe() {
+        return "pool servidor " + properties.getProperty("Ice.ThreadPool.Server.Size")
+                + "-" + properties.getProperty("Ice.ThreadPool.Server.SizeMax")
+                + ", pool cliente " + properties.getProperty("Ice.ThreadPool.Client.Size")
+                + "-" + properties.getProperty("Ice.ThreadPool.Client.SizeMax")
+                + ", despacho " + (useVirtualThreads() ? "en hilos virtuales" : "en el pool de Ice")
+                + ", ventana de entrega " + getDeliveryWindowMillis() + " ms"
+                + ", cola de salida " + getOutboundQueueDepth() + " (" + getOutboundMaxInFlight()
+                + " en vuelo, " + getOutboundOverflowPolicy().name().toLowerCase(Locale.ROOT) + ")"
+                + ", log " + getLogLevel()
+                + ", métricas en puerto " + getMetricsPort()
+                + (isClustered() ? ", nodo " + getClusterNodeId() + " de " + (getClusterPeers().size() + 1) : "");
+    }
+
+    public void close() {
+        if (virtualThreads != null) {
+            virtualThreads.shutdown();
+        }
+    }
+}
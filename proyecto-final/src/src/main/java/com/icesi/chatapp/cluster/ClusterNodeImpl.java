@@ -0,0 +1,132 @@
+package com.icesi.chatapp.cluster;
+
+import Chat.ClusterMessage;
+import Chat.ClusterNode;
+import Chat.ClusterNodePrx;
+import Chat.GroupState;
+import Chat.InboxBatch;
+import com.icesi.chatapp.metrics.Counter;
+import com.icesi.chatapp.metrics.Log;
+import com.icesi.chatapp.metrics.Metrics;
+import com.icesi.chatapp.repos.MessageRecord;
+import com.icesi.chatapp.services.ChatServiceImpl;
+import com.zeroc.Ice.Current;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Lado entrante del clúster: lo que los otros nodos le piden a este
+public class ClusterNodeImpl implements ClusterNode {
+    private static final Counter RECEIVED = Metrics.counter("cluster.received");
+
+    private final ClusterRouter router;
+    private final ChatServiceImpl chatService;
+
+    public ClusterNodeImpl(ClusterRouter router, ChatServiceImpl chatService) {
+        this.router = router;
+        this.chatService = chatService;
+    }
+
+    // Al arrancar: intercambia presencia con cada nodo y copia los grupos del
+    // primero que responda. Los nodos caídos se sincronizan cuando arranquen.
+    public void joinCluster() {
+        String[] localUsers = chatService.getLocalUsers();
+        AtomicBoolean groupsSynced = new AtomicBoolean(false);
+
+        router.getPeers().forEach((node, peer) -> {
+            peer.syncPresenceAsync(router.getNodeId(), localUsers).whenComplete((users, error) -> {
+                if (error != null) {
+                    Log.info(" Nodo {} todavía no está disponible", node);
+                    return;
+                }
+                router.getDirectory().replaceNode(node, users);
+                Log.info(" Nodo {} conectado ({} usuarios)", node, users.length);
+                syncGroupsFrom(node, peer, groupsSynced);
+            });
+        });
+    }
+
+    private void syncGroupsFrom(String node, ClusterNodePrx peer, AtomicBoolean groupsSynced) {
+        if (!groupsSynced.compareAndSet(false, true)) return;
+        peer.listGroupsAsync().whenComplete((groups, error) -> {
+            if (error != null) {
+                groupsSynced.set(false);
+                return;
+            }
+            chatService.mergeGroups(groups);
+            Log.info(" {} grupos sincronizados desde {}", groups.length, node);
+        });
+    }
+
+    // ==================== PRESENCIA ====================
+
+    // También llega cuando un nodo se recupera de un fallo: solo se avisa de los
+    // usuarios que no se conocían ya en ese nodo
+    @Override
+    public String[] syncPresence(String node, String[] users, Current current) {
+        PresenceDirectory directory = router.getDirectory();
+        List<String> joined = new ArrayList<>();
+        for (String user : users) {
+            if (!node.equals(directory.nodeOf(user))) joined.add(user);
+        }
+        directory.replaceNode(node, users);
+        for (String user : joined) {
+            chatService.remoteUserOnline(user);
+        }
+        return chatService.getLocalUsers();
+    }
+
+    @Override
+    public void userOnline(String node, String username, Current current) {
+        router.getDirectory().online(node, username);
+        chatService.remoteUserOnline(username);
+    }
+
+    @Override
+    public void userOffline(String node, String username, Current current) {
+        if (router.getDirectory().offline(node, username)) {
+            chatService.remoteUserOffline(username);
+        }
+    }
+
+    // ==================== MENSAJES ====================
+
+    @Override
+    public void deliver(ClusterMessage msg, String[] recipients, Current current) {
+        RECEIVED.increment();
+        chatService.deliverReplicated(ClusterRouter.toRecord(msg), recipients);
+    }
+
+    @Override
+    public void storeInbox(ClusterMessage msg, String[] recipients, Current current) {
+        MessageRecord record = ClusterRouter.toRecord(msg);
+        for (String recipient : recipients) {
+            chatService.deliverLocally(recipient, record);
+        }
+    }
+
+    // ==================== GRUPOS ====================
+
+    @Override
+    public void groupChanged(int op, String groupName, String username, Current current) {
+        chatService.applyGroupChange((byte) op, groupName, username);
+    }
+
+    @Override
+    public GroupState[] listGroups(Current current) {
+        return chatService.getGroupStates();
+    }
+
+    // ==================== BUZÓN ====================
+
+    @Override
+    public InboxBatch fetchInbox(String username, int max, Current current) {
+        return chatService.getInboxBatch(username, max);
+    }
+
+    @Override
+    public void ackInbox(String username, long endOffset, Current current) {
+        chatService.ackInbox(username, endOffset);
+    }
+}
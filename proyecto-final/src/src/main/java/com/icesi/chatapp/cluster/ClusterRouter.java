@@ -0,0 +1,189 @@
+package com.icesi.chatapp.cluster;
+
+import Chat.ClusterMessage;
+import Chat.ClusterNodePrx;
+import Chat.InboxBatch;
+import com.icesi.chatapp.metrics.Counter;
+import com.icesi.chatapp.metrics.Log;
+import com.icesi.chatapp.metrics.Metrics;
+import com.icesi.chatapp.repos.MessageRecord;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+// Lado saliente del clúster: a qué nodo le toca cada usuario y el envío de
+// mensajes, presencia y cambios de grupo a los demás nodos.
+//
+// Todos los nodos se configuran con la misma lista, así que todos calculan
+// el mismo nodo de origen para cada usuario; ahí vive su buzón mientras no
+// esté conectado en ningún lado.
+public class ClusterRouter {
+    private static final Counter FORWARDED = Metrics.counter("cluster.forwarded");
+    private static final Counter FAILED = Metrics.counter("cluster.failed");
+    private static final Counter REROUTED = Metrics.counter("cluster.rerouted");
+
+    private final String nodeId;
+    private final Map<String, ClusterNodePrx> peers;
+    private final List<String> nodes;
+    private final PresenceDirectory directory = new PresenceDirectory();
+    // Usuarios conectados a este nodo, para resincronizar la presencia
+    private final Supplier<String[]> localUsers;
+    // Entrega local de una copia que no llegó a otro nodo (o al buzón si no está conectado)
+    private final BiConsumer<String, MessageRecord> localDelivery;
+    private final Set<String> resyncing = ConcurrentHashMap.newKeySet();
+
+    public ClusterRouter(String nodeId, Map<String, ClusterNodePrx> peers, Supplier<String[]> localUsers,
+                         BiConsumer<String, MessageRecord> localDelivery) {
+        this.nodeId = nodeId;
+        this.peers = peers;
+        this.localUsers = localUsers;
+        this.localDelivery = localDelivery;
+
+        List<String> all = new ArrayList<>(peers.keySet());
+        all.add(nodeId);
+        Collections.sort(all);
+        this.nodes = all;
+
+        Metrics.gauge("cluster.users.remote", directory::size);
+    }
+
+    public String getNodeId() { return nodeId; }
+    public PresenceDirectory getDirectory() { return directory; }
+    public Map<String, ClusterNodePrx> getPeers() { return peers; }
+
+    public boolean isSelf(String node) {
+        return nodeId.equals(node);
+    }
+
+    // Donde está conectado el usuario o, si no está en ningún nodo, su nodo de origen
+    public String nodeFor(String username) {
+        String node = directory.nodeOf(username);
+        return node != null ? node : homeOf(username);
+    }
+
+    public String homeOf(String username) {
+        return nodes.get(Math.floorMod(username.hashCode(), nodes.size()));
+    }
+
+    public boolean isOnlineElsewhere(String username) {
+        return directory.nodeOf(username) != null;
+    }
+
+    // ==================== PRESENCIA ====================
+
+    public void announceOnline(String username) {
+        peers.forEach((node, peer) -> watch(node, peer.userOnlineAsync(nodeId, username)));
+    }
+
+    public void announceOffline(String username) {
+        peers.forEach((node, peer) -> watch(node, peer.userOfflineAsync(nodeId, username)));
+    }
+
+    // ==================== MENSAJES ====================
+
+    // Una copia por nodo, con la lista de destinatarios que le tocan (puede ir
+    // vacía: igual la guarda para que el historial esté completo en todos).
+    // Si un nodo no la recibe, sus destinatarios la reciben en su buzón de origen
+    public void replicate(MessageRecord record, Map<String, List<String>> recipientsByNode) {
+        ClusterMessage msg = toClusterMessage(record);
+        peers.forEach((node, peer) -> {
+            List<String> recipients = recipientsByNode.getOrDefault(node, Collections.emptyList());
+            FORWARDED.increment();
+            peer.deliverAsync(msg, recipients.toArray(new String[0])).whenComplete((result, error) -> {
+                if (error == null) return;
+                nodeFailed(node, error);
+                reroute(node, record, msg, recipients);
+            });
+        });
+    }
+
+    // Destinatarios de un nodo que no respondió: cada uno va a su nodo de origen.
+    // Si el origen es este o el mismo nodo caído, la copia queda en este nodo
+    private void reroute(String failedNode, MessageRecord record, ClusterMessage msg, List<String> recipients) {
+        Map<String, List<String>> byHome = new HashMap<>();
+        for (String recipient : recipients) {
+            REROUTED.increment();
+            String home = homeOf(recipient);
+            if (isSelf(home) || home.equals(failedNode)) {
+                localDelivery.accept(recipient, record);
+            } else {
+                byHome.computeIfAbsent(home, n -> new ArrayList<>()).add(recipient);
+            }
+        }
+        byHome.forEach((home, users) -> peers.get(home).storeInboxAsync(msg, users.toArray(new String[0]))
+                .whenComplete((result, error) -> {
+                    if (error == null) return;
+                    nodeFailed(home, error);
+                    users.forEach(user -> localDelivery.accept(user, record));
+                }));
+    }
+
+    // ==================== GRUPOS ====================
+
+    public void groupChanged(byte op, String groupName, String username) {
+        peers.forEach((node, peer) -> watch(node, peer.groupChangedAsync(op, groupName, username)));
+    }
+
+    // ==================== BUZÓN REMOTO ====================
+
+    public CompletableFuture<InboxBatch> fetchInbox(String node, String username, int max) {
+        ClusterNodePrx peer = peers.get(node);
+        if (peer == null) return CompletableFuture.completedFuture(null);
+        return peer.fetchInboxAsync(username, max);
+    }
+
+    public void ackInbox(String node, String username, long endOffset) {
+        ClusterNodePrx peer = peers.get(node);
+        if (peer != null) {
+            watch(node, peer.ackInboxAsync(username, endOffset));
+        }
+    }
+
+    // Un fallo puede ser pasajero: en vez de olvidar a los usuarios del nodo se
+    // vuelve a intercambiar la presencia con él. Mientras no responda, lo que se
+    // le mande termina en el buzón de origen de cada destinatario
+    void nodeFailed(String node, Throwable error) {
+        FAILED.increment();
+        Log.warn(" Nodo {} no responde: {}", node, error.getMessage());
+        resync(node);
+    }
+
+    private void resync(String node) {
+        ClusterNodePrx peer = peers.get(node);
+        if (peer == null || !resyncing.add(node)) return;
+
+        peer.syncPresenceAsync(nodeId, localUsers.get()).whenComplete((users, error) -> {
+            resyncing.remove(node);
+            if (error != null) {
+                Log.warn(" Nodo {} sigue sin responder: {}", node, error.getMessage());
+                return;
+            }
+            directory.replaceNode(node, users);
+            Log.info(" Nodo {} resincronizado ({} usuarios)", node, users.length);
+        });
+    }
+
+    private void watch(String node, CompletableFuture<?> call) {
+        call.whenComplete((result, error) -> {
+            if (error != null) nodeFailed(node, error);
+        });
+    }
+
+    public static ClusterMessage toClusterMessage(MessageRecord record) {
+        return new ClusterMessage(record.getTimestamp(), record.getSender(), record.getTarget(),
+                record.getType() == MessageRecord.Type.GROUP, record.getContent());
+    }
+
+    public static MessageRecord toRecord(ClusterMessage msg) {
+        return MessageRecord.text(msg.timestamp, msg.sender, msg.target,
+                msg.group ? MessageRecord.Type.GROUP : MessageRecord.Type.PRIVATE, msg.content);
+    }
+}
@@ -0,0 +1,44 @@
+package com.icesi.chatapp.cluster;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Usuarios conectados a otros nodos del clúster: usuario -> id del nodo.
+// Los usuarios de este nodo no están aquí, los lleva el UserManager.
+public class PresenceDirectory {
+    private final Map<String, String> nodeOfUser = new ConcurrentHashMap<>();
+
+    // null si el usuario no está conectado a ningún otro nodo
+    public String nodeOf(String username) {
+        return nodeOfUser.get(username);
+    }
+
+    public void online(String node, String username) {
+        nodeOfUser.put(username, node);
+    }
+
+    // Solo si seguía registrado en ese nodo (pudo reconectarse en otro)
+    public boolean offline(String node, String username) {
+        return nodeOfUser.remove(username, node);
+    }
+
+    // Un nodo que arranca o se recupera manda su lista completa
+    public void replaceNode(String node, String[] usernames) {
+        removeNode(node);
+        for (String username : usernames) {
+            nodeOfUser.put(username, node);
+        }
+    }
+
+    public void removeNode(String node) {
+        nodeOfUser.values().removeIf(node::equals);
+    }
+
+    public String[] users() {
+        return nodeOfUser.keySet().toArray(new String[0]);
+    }
+
+    public int size() {
+        return nodeOfUser.size();
+    }
+}
@@ -0,0 +1,24 @@
+package com.icesi.chatapp.managers;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Contadores globales de entrega de callbacks, compartidos por todas las colas
+public class DeliveryCounters {
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+
+    void delivered() { delivered.incrementAndGet(); }
+    void failed() { failed.incrementAndGet(); }
+    void dropped() { dropped.incrementAndGet(); }
+    void coalesced() { coalesced.incrementAndGet(); }
+    void evicted() { evicted.incrementAndGet(); }
+
+    public long getDelivered() { return delivered.get(); }
+    public long getFailed() { return failed.get(); }
+    public long getDropped() { return dropped.get(); }
+    public long getCoalesced() { return coalesced.get(); }
+    public long getEvicted() { return evicted.get(); }
+}
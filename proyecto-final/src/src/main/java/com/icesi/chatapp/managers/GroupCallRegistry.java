@@ -0,0 +1,96 @@
+package com.icesi.chatapp.managers;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+
+// Llamadas grupales en curso, compartidas por el servicio Ice y el WebSocket
+// de audio. Solo los miembros del grupo (según el GroupManager) pueden
+// iniciar una llamada, unirse o recibir la invitación.
+public class GroupCallRegistry {
+    private final GroupManager groupManager;
+    private final Map<String, GroupCall> calls = new ConcurrentHashMap<>();
+    // Se avisa (callId, grupo) cuando una llamada termina, la cierre quien la cierre
+    private final List<BiConsumer<String, String>> endListeners = new CopyOnWriteArrayList<>();
+
+    public GroupCallRegistry(GroupManager groupManager) {
+        this.groupManager = groupManager;
+    }
+
+    public void addEndListener(BiConsumer<String, String> listener) {
+        endListeners.add(listener);
+    }
+
+    // Miembros del grupo a los que hay que invitar (vacío si el grupo no existe)
+    public Set<String> membersOf(String groupName) {
+        Set<String> members = groupManager.getMembers(groupName);
+        return members != null ? members : Collections.emptySet();
+    }
+
+    // false si el iniciador no es miembro o el callId ya es de otra llamada.
+    // Repetirlo para la misma llamada (p. ej. por Ice y luego por WebSocket) no falla
+    public boolean start(String callId, String groupName, String initiator) {
+        if (!groupManager.isMember(groupName, initiator)) return false;
+
+        GroupCall call = calls.computeIfAbsent(callId, id -> new GroupCall(groupName));
+        if (!call.groupName.equals(groupName)) return false;
+        call.participants.add(initiator);
+        return true;
+    }
+
+    public boolean join(String callId, String groupName, String username) {
+        GroupCall call = calls.get(callId);
+        if (call == null || !call.groupName.equals(groupName)) return false;
+        if (!groupManager.isMember(groupName, username)) return false;
+
+        call.participants.add(username);
+        return true;
+    }
+
+    // true si era el último participante y la llamada terminó
+    public boolean leave(String callId, String username) {
+        GroupCall call = calls.get(callId);
+        if (call == null) return false;
+
+        call.participants.remove(username);
+        if (call.participants.isEmpty()) {
+            return end(callId);
+        }
+        return false;
+    }
+
+    public boolean end(String callId) {
+        GroupCall call = calls.remove(callId);
+        if (call == null) return false;
+        endListeners.forEach(listener -> listener.accept(callId, call.groupName));
+        return true;
+    }
+
+    // null si no es una llamada grupal en curso
+    public String groupOf(String callId) {
+        GroupCall call = calls.get(callId);
+        return call != null ? call.groupName : null;
+    }
+
+    public boolean isParticipant(String callId, String username) {
+        GroupCall call = calls.get(callId);
+        return call != null && call.participants.contains(username);
+    }
+
+    public int size() {
+        return calls.size();
+    }
+
+    private static class GroupCall {
+        final String groupName;
+        final Set<String> participants = ConcurrentHashMap.newKeySet();
+
+        GroupCall(String groupName) {
+            this.groupName = groupName;
+        }
+    }
+}
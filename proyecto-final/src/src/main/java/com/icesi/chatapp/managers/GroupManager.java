@@ -0,0 +1,275 @@
+package com.icesi.chatapp.managers;
+
+import com.icesi.chatapp.metrics.Log;
+import com.icesi.chatapp.repos.GroupJournal;
+import com.icesi.chatapp.repos.GroupSnapshot;
+import com.icesi.chatapp.repos.GroupStore;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BooleanSupplier;
+
+// Registro de grupos con índice inverso usuario -> grupos. Cada cambio de
+// membresía actualiza ambos mapas bajo el lock del grupo, así que listar
+// los grupos de un usuario cuesta lo que sus propias membresías y no el
+// total de grupos.
+//
+// Con un GroupStore los cambios se escriben en el journal antes de tocar los
+// mapas (si la escritura falla el cambio no se aplica), y lo que viene del
+// snapshot se carga en memoria solo cuando alguien toca ese grupo o ese usuario.
+public class GroupManager {
+    private static final int COMPACT_THRESHOLD = 10_000;
+    private static final int GROUP_LOCK_STRIPES = 256;
+
+    private static final GroupSnapshot EMPTY = GroupSnapshot.empty();
+
+    private final Map<String, Set<String>> groups = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> memberships = new ConcurrentHashMap<>();
+
+    // Serializa journal y mapas de un mismo grupo sin bloquear los bins del mapa
+    private final Object[] groupLocks = newLocks(GROUP_LOCK_STRIPES);
+
+    private final GroupStore store;
+    // Los cambios toman el read lock (concurrentes entre sí); compactar toma el write lock
+    private final ReadWriteLock compactionLock = new ReentrantReadWriteLock();
+    private final AtomicBoolean compacting = new AtomicBoolean(false);
+    private volatile boolean replaying;
+
+    public GroupManager() {
+        this.store = null;
+    }
+
+    public GroupManager(GroupStore store) throws IOException {
+        this.store = store;
+
+        long start = System.nanoTime();
+        replaying = true;
+        int replayed;
+        try {
+            replayed = store.replay(this::applyJournal);
+        } finally {
+            replaying = false;
+        }
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        Log.info(" Grupos cargados en {} ms ({} en snapshot, {} cambios en journal)",
+                elapsedMs, store.getSnapshot().getGroupCount(), replayed);
+    }
+
+    public boolean createGroup(String groupName, String creator) {
+        return mutate(() -> {
+            synchronized (lockOf(groupName)) {
+                if (exists(groupName)) return false;
+                if (!log(GroupJournal.CREATE, groupName, creator)) return false;
+
+                Set<String> members = ConcurrentHashMap.newKeySet();
+                members.add(creator);
+                groups.put(groupName, members);
+                membershipsOf(creator).add(groupName);
+                return true;
+            }
+        });
+    }
+
+    public boolean addMember(String groupName, String username) {
+        return mutate(() -> {
+            synchronized (lockOf(groupName)) {
+                Set<String> members = membersOf(groupName);
+                if (members == null) return false;
+
+                if (!members.contains(username)) {
+                    if (!log(GroupJournal.ADD, groupName, username)) return false;
+                    members.add(username);
+                }
+                membershipsOf(username).add(groupName);
+                return true;
+            }
+        });
+    }
+
+    public boolean removeMember(String groupName, String username) {
+        return mutate(() -> {
+            synchronized (lockOf(groupName)) {
+                Set<String> members = membersOf(groupName);
+                if (members == null) return false;
+
+                if (members.contains(username)) {
+                    if (!log(GroupJournal.REMOVE, groupName, username)) return false;
+                    members.remove(username);
+                }
+                Set<String> mine = loadedMembershipsOf(username);
+                if (mine != null) mine.remove(groupName);
+                return true;
+            }
+        });
+    }
+
+    public boolean exists(String groupName) {
+        return groups.containsKey(groupName) || snapshot().hasGroup(groupName);
+    }
+
+    public boolean isMember(String groupName, String username) {
+        Set<String> members = membersOf(groupName);
+        return members != null && members.contains(username);
+    }
+
+    // Vista de solo lectura, o null si el grupo no existe
+    public Set<String> getMembers(String groupName) {
+        Set<String> members = membersOf(groupName);
+        return members != null ? Collections.unmodifiableSet(members) : null;
+    }
+
+    public String[] listGroupsOf(String username) {
+        Set<String> mine = loadedMembershipsOf(username);
+        return mine != null ? mine.toArray(new String[0]) : new String[0];
+    }
+
+    // Todos los grupos, también los que siguen solo en el snapshot
+    public List<String> listGroups() {
+        return mergedKeys(snapshot().groupNames(), groups.keySet());
+    }
+
+    // Grupos cargados en memoria (el resto sigue solo en el snapshot)
+    public int size() {
+        return groups.size();
+    }
+
+    // ==================== PERSISTENCIA ====================
+
+    // Escribe un snapshot con el estado completo y vacía el journal
+    public void compact() throws IOException {
+        if (store == null) return;
+
+        compactionLock.writeLock().lock();
+        try {
+            long start = System.nanoTime();
+            GroupSnapshot current = snapshot();
+
+            // Lo que no se ha cargado se copia del snapshot sin meterlo en memoria
+            List<String> groupNames = mergedKeys(current.groupNames(), groups.keySet());
+            List<String> userNames = mergedKeys(current.userNames(), memberships.keySet());
+
+            store.compact(
+                    groupNames, name -> nonNull(groups.containsKey(name) ? groups.get(name) : current.loadMembers(name)),
+                    userNames, user -> nonNull(memberships.containsKey(user) ? memberships.get(user) : current.loadGroupsOf(user)));
+
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+            Log.info(" Snapshot de grupos escrito en {} ms ({} grupos, {} usuarios)",
+                    elapsedMs, groupNames.size(), userNames.size());
+        } finally {
+            compactionLock.writeLock().unlock();
+        }
+    }
+
+    private void applyJournal(byte op, String groupName, String username) {
+        switch (op) {
+            case GroupJournal.CREATE -> createGroup(groupName, username);
+            case GroupJournal.ADD -> addMember(groupName, username);
+            case GroupJournal.REMOVE -> removeMember(groupName, username);
+            default -> Log.warn("Operación desconocida en journal de grupos: {}", op);
+        }
+    }
+
+    private boolean mutate(BooleanSupplier change) {
+        boolean changed;
+        compactionLock.readLock().lock();
+        try {
+            changed = change.getAsBoolean();
+        } finally {
+            compactionLock.readLock().unlock();
+        }
+        maybeCompact();
+        return changed;
+    }
+
+    // false si el cambio no quedó en el journal y no debe aplicarse
+    private boolean log(byte op, String groupName, String username) {
+        if (store == null || replaying) return true;
+        try {
+            store.append(op, groupName, username);
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            Log.error("No se pudo registrar el cambio del grupo {}: {}", groupName, e.getMessage());
+            return false;
+        }
+    }
+
+    private void maybeCompact() {
+        if (store == null || replaying || store.getJournalEntries() < COMPACT_THRESHOLD) return;
+        if (!compacting.compareAndSet(false, true)) return;
+
+        Thread compactor = new Thread(() -> {
+            try {
+                compact();
+            } catch (IOException e) {
+                Log.error("Error compactando grupos: {}", e.getMessage());
+            } finally {
+                compacting.set(false);
+            }
+        }, "group-compactor");
+        compactor.setDaemon(true);
+        compactor.start();
+    }
+
+    // ==================== CARGA PEREZOSA ====================
+
+    private static Object[] newLocks(int count) {
+        Object[] locks = new Object[count];
+        for (int i = 0; i < count; i++) {
+            locks[i] = new Object();
+        }
+        return locks;
+    }
+
+    private Object lockOf(String groupName) {
+        return groupLocks[(groupName.hashCode() & 0x7fffffff) % GROUP_LOCK_STRIPES];
+    }
+
+    private GroupSnapshot snapshot() {
+        return store != null ? store.getSnapshot() : EMPTY;
+    }
+
+    private Set<String> membersOf(String groupName) {
+        Set<String> members = groups.get(groupName);
+        if (members != null || store == null) return members;
+
+        GroupSnapshot current = snapshot();
+        if (!current.hasGroup(groupName)) return groups.get(groupName);
+        return groups.computeIfAbsent(groupName, current::loadMembers);
+    }
+
+    private Set<String> loadedMembershipsOf(String username) {
+        Set<String> mine = memberships.get(username);
+        if (mine != null || store == null) return mine;
+
+        Set<String> stored = snapshot().loadGroupsOf(username);
+        if (stored == null) return null;
+        Set<String> previous = memberships.putIfAbsent(username, stored);
+        return previous != null ? previous : stored;
+    }
+
+    private Set<String> membershipsOf(String username) {
+        Set<String> mine = loadedMembershipsOf(username);
+        return mine != null ? mine : memberships.computeIfAbsent(username, u -> ConcurrentHashMap.newKeySet());
+    }
+
+    private static List<String> mergedKeys(List<String> stored, Set<String> loaded) {
+        TreeSet<String> keys = new TreeSet<>(stored);
+        keys.addAll(loaded);
+        return new ArrayList<>(keys);
+    }
+
+    private static Collection<String> nonNull(Collection<String> values) {
+        return values != null ? values : Collections.emptyList();
+    }
+}
@@ -0,0 +1,168 @@
+package com.icesi.chatapp.managers;
+
+import Chat.ChatCallbackPrx;
+import Chat.Message;
+import com.icesi.chatapp.model.UserSession;
+import com.icesi.chatapp.repos.MessageRecord;
+import com.zeroc.Ice.OperationNotExistException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Agrupa los mensajes que van al mismo destinatario durante una ventana corta
+// (unos pocos ms) y los envía en un solo onMessagesBatch en lugar de un
+// onMessageReceived por mensaje. Con ventana 0, o si el cliente no implementa
+// onMessagesBatch, se envían uno a uno como antes.
+public class MessageBatcher {
+    public static final long DEFAULT_WINDOW_MILLIS = 5;
+    public static final int MAX_BATCH = 256;
+
+    // Copias para el buzón de quien se desconectó antes de que saliera su lote,
+    // o cuyo lote la cola de salida aceptó pero no llegó a entregar
+    @FunctionalInterface
+    public interface OfflineHandler {
+        void store(String username, MessageRecord record);
+    }
+
+    private final UserManager userManager;
+    private final OfflineHandler offlineHandler;
+    private final long windowMillis;
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong batchedMessages = new AtomicLong();
+
+    public MessageBatcher(UserManager userManager, OfflineHandler offlineHandler) {
+        this(userManager, offlineHandler, DEFAULT_WINDOW_MILLIS);
+    }
+
+    public MessageBatcher(UserManager userManager, OfflineHandler offlineHandler, long windowMillis) {
+        this.userManager = userManager;
+        this.offlineHandler = offlineHandler;
+        this.windowMillis = windowMillis;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "message-batcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // false si el usuario no está conectado (el llamador decide qué hacer con el mensaje)
+    public boolean submit(String username, Message msg, MessageRecord offlineCopy) {
+        UserSession session = userManager.getSession(username);
+        if (session == null) return false;
+
+        if (windowMillis <= 0 || !session.supportsBatchCallbacks()) {
+            return userManager.deliver(username, callback -> callback.onMessageReceivedAsync(msg),
+                    () -> offlineHandler.store(username, offlineCopy));
+        }
+
+        Pending[] created = {null};
+        Pending[] full = {null};
+        pending.compute(username, (user, current) -> {
+            if (current == null) {
+                current = new Pending();
+                created[0] = current;
+            }
+            current.add(msg, offlineCopy);
+            if (current.size() >= MAX_BATCH) {
+                full[0] = current;
+                return null;
+            }
+            return current;
+        });
+
+        if (full[0] != null) {
+            flush(username, full[0]);
+        } else if (created[0] != null) {
+            Pending batch = created[0];
+            scheduler.schedule(() -> {
+                // Si ya salió por llenarse, aquí no queda nada que hacer
+                if (pending.remove(username, batch)) {
+                    flush(username, batch);
+                }
+            }, windowMillis, TimeUnit.MILLISECONDS);
+        }
+        return true;
+    }
+
+    private void flush(String username, Pending batch) {
+        Message[] messages = batch.messages.toArray(new Message[0]);
+        Runnable store = () -> {
+            for (MessageRecord record : batch.offlineCopies) {
+                offlineHandler.store(username, record);
+            }
+        };
+        boolean delivered;
+
+        if (messages.length == 1) {
+            delivered = userManager.deliver(username, callback -> callback.onMessageReceivedAsync(messages[0]), store);
+        } else {
+            batches.incrementAndGet();
+            batchedMessages.addAndGet(messages.length);
+            UserSession session = userManager.getSession(username);
+            delivered = session != null
+                    && userManager.deliver(username, callback -> sendBatch(callback, messages, session), store);
+        }
+
+        if (!delivered) {
+            store.run();
+        }
+    }
+
+    // onMessagesBatch con respaldo de un onMessageReceived por mensaje para
+    // clientes que no lo implementan
+    public static CompletableFuture<Void> sendBatch(ChatCallbackPrx callback, Message[] messages) {
+        return sendBatch(callback, messages, null);
+    }
+
+    // Con sesión, un cliente sin onMessagesBatch queda marcado y deja de recibir lotes
+    private static CompletableFuture<Void> sendBatch(ChatCallbackPrx callback, Message[] messages,
+                                                     UserSession session) {
+        return callback.onMessagesBatchAsync(messages)
+                .exceptionallyCompose(e -> {
+                    if (!isMissingOperation(e)) return CompletableFuture.failedFuture(e);
+                    if (session != null) session.disableBatchCallbacks();
+                    return sendOneByOne(callback, messages);
+                });
+    }
+
+    private static CompletableFuture<Void> sendOneByOne(ChatCallbackPrx callback, Message[] messages) {
+        CompletableFuture<?>[] sends = new CompletableFuture<?>[messages.length];
+        for (int i = 0; i < messages.length; i++) {
+            sends[i] = callback.onMessageReceivedAsync(messages[i]);
+        }
+        return CompletableFuture.allOf(sends);
+    }
+
+    private static boolean isMissingOperation(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        return cause instanceof OperationNotExistException;
+    }
+
+    public long getBatches() { return batches.get(); }
+    public long getBatchedMessages() { return batchedMessages.get(); }
+
+    private static class Pending {
+        final List<Message> messages = new ArrayList<>();
+        final List<MessageRecord> offlineCopies = new ArrayList<>();
+
+        void add(Message msg, MessageRecord offlineCopy) {
+            messages.add(msg);
+            offlineCopies.add(offlineCopy);
+        }
+
+        int size() {
+            return messages.size();
+        }
+    }
+}
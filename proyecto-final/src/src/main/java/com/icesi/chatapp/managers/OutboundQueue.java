@@ -0,0 +1,218 @@
+package com.icesi.chatapp.managers;
+
+import Chat.ChatCallbackPrx;
+import com.icesi.chatapp.metrics.Log;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+// Cola de salida de un usuario. Los emisores solo encolan; la cola envía los
+// callbacks con AMI manteniendo como máximo maxInFlight sin respuesta, de modo
+// que un cliente lento solo retrasa su propia cola.
+public class OutboundQueue {
+
+    public enum OverflowPolicy {
+        DROP_OLDEST,  // se descarta el evento más antiguo pendiente
+        DISCONNECT    // se expulsa al consumidor lento
+    }
+
+    private final String username;
+    private final ChatCallbackPrx callback;
+    private final int maxDepth;
+    private final int maxInFlight;
+    private final OverflowPolicy overflowPolicy;
+    private final DeliveryCounters counters;
+    private final Runnable onEvict;
+
+    private final ArrayDeque<Entry> pending = new ArrayDeque<>();
+    // Eventos pendientes que se pueden fusionar (p. ej. presencia de un usuario)
+    private final Map<String, Entry> coalescable = new HashMap<>();
+    private int inFlight;
+    private boolean draining;
+    private boolean closed;
+
+    // Métricas de esta cola (protegidas por el lock de la cola)
+    private long enqueued;
+    private long sent;
+    private long failed;
+    private long dropped;
+    private long coalesced;
+    private int maxDepthSeen;
+
+    public OutboundQueue(String username, ChatCallbackPrx callback, int maxDepth, int maxInFlight,
+                         OverflowPolicy overflowPolicy, DeliveryCounters counters, Runnable onEvict) {
+        this.username = username;
+        this.callback = callback;
+        this.maxDepth = maxDepth;
+        this.maxInFlight = maxInFlight;
+        this.overflowPolicy = overflowPolicy;
+        this.counters = counters;
+        this.onEvict = onEvict;
+    }
+
+    public boolean offer(UserManager.CallbackAction action) {
+        return offer(null, action);
+    }
+
+    // Con coalesceKey != null, un evento pendiente con la misma clave se
+    // reemplaza por el nuevo en lugar de encolar otro
+    public boolean offer(String coalesceKey, UserManager.CallbackAction action) {
+        return offer(coalesceKey, action, null);
+    }
+
+    // onLost (puede ser null) corre fuera del lock si el evento aceptado se
+    // descarta, se cierra la cola antes de enviarlo o el callback falla
+    public boolean offer(String coalesceKey, UserManager.CallbackAction action, Runnable onLost) {
+        boolean evict = false;
+        Runnable lost = null;
+        synchronized (this) {
+            if (closed) return false;
+
+            if (coalesceKey != null) {
+                Entry existing = coalescable.get(coalesceKey);
+                if (existing != null) {
+                    existing.action = action;
+                    coalesced++;
+                    counters.coalesced();
+                    return true;
+                }
+            }
+
+            if (pending.size() >= maxDepth) {
+                if (overflowPolicy == OverflowPolicy.DISCONNECT) {
+                    evict = true;
+                } else {
+                    Entry oldest = pending.poll();
+                    if (oldest.coalesceKey != null) coalescable.remove(oldest.coalesceKey);
+                    lost = oldest.onLost;
+                    dropped++;
+                    counters.dropped();
+                }
+            }
+
+            if (!evict) {
+                Entry entry = new Entry(coalesceKey, action, onLost);
+                pending.add(entry);
+                if (coalesceKey != null) coalescable.put(coalesceKey, entry);
+                enqueued++;
+                maxDepthSeen = Math.max(maxDepthSeen, pending.size());
+            }
+        }
+
+        if (lost != null) lost.run();
+        if (evict) {
+            evict();
+            return false;
+        }
+        drain();
+        return true;
+    }
+
+    public void close() {
+        shutdown();
+    }
+
+    // true si esta llamada fue la que cerró la cola
+    private boolean shutdown() {
+        List<Runnable> lost = new ArrayList<>();
+        synchronized (this) {
+            if (closed) return false;
+            closed = true;
+            dropped += pending.size();
+            for (Entry entry : pending) {
+                if (entry.onLost != null) lost.add(entry.onLost);
+            }
+            pending.clear();
+            coalescable.clear();
+        }
+        lost.forEach(Runnable::run);
+        return true;
+    }
+
+    private void evict() {
+        if (!shutdown()) return;
+        counters.evicted();
+        Log.warn(" Consumidor lento expulsado: {}", username);
+        onEvict.run();
+    }
+
+    // Un solo hilo drena a la vez; las respuestas que liberan espacio durante
+    // el drenado las recoge el mismo bucle en su siguiente vuelta
+    private void drain() {
+        synchronized (this) {
+            if (draining) return;
+            draining = true;
+        }
+
+        while (true) {
+            Entry entry;
+            synchronized (this) {
+                if (closed || inFlight >= maxInFlight || pending.isEmpty()) {
+                    draining = false;
+                    return;
+                }
+                entry = pending.poll();
+                if (entry.coalesceKey != null) coalescable.remove(entry.coalesceKey);
+                inFlight++;
+            }
+            send(entry);
+        }
+    }
+
+    private void send(Entry entry) {
+        CompletableFuture<Void> future;
+        try {
+            future = entry.action.execute(callback);
+        } catch (Exception e) {
+            completed(entry, e);
+            return;
+        }
+        future.whenComplete((result, error) -> {
+            completed(entry, error);
+            drain();
+        });
+    }
+
+    private void completed(Entry entry, Throwable error) {
+        synchronized (this) {
+            inFlight--;
+            if (error != null) {
+                failed++;
+            } else {
+                sent++;
+            }
+        }
+        if (error != null) {
+            counters.failed();
+            Log.debug("Error notificando a {}: {}", username, error.getMessage());
+            if (entry.onLost != null) entry.onLost.run();
+        } else {
+            counters.delivered();
+        }
+    }
+
+    public String getUsername() { return username; }
+    public synchronized int getDepth() { return pending.size(); }
+    public synchronized int getInFlight() { return inFlight; }
+    public synchronized long getEnqueued() { return enqueued; }
+    public synchronized long getSent() { return sent; }
+    public synchronized long getFailed() { return failed; }
+    public synchronized long getDropped() { return dropped; }
+    public synchronized long getCoalesced() { return coalesced; }
+    public synchronized int getMaxDepthSeen() { return maxDepthSeen; }
+
+    private static class Entry {
+        final String coalesceKey;
+        UserManager.CallbackAction action;
+        final Runnable onLost;
+
+        Entry(String coalesceKey, UserManager.CallbackAction action, Runnable onLost) {
+            this.coalesceKey = coalesceKey;
+            this.action = action;
+            this.onLost = onLost;
+        }
+    }
+}
@@ -1,26 +1,63 @@
 package com.icesi.chatapp.managers;
 
 import Chat.ChatCallbackPrx;
+import com.icesi.chatapp.metrics.Log;
 import com.icesi.chatapp.model.UserSession;
+import com.zeroc.Ice.Connection;
+import com.zeroc.Ice.ConnectionClose;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class UserManager {
-    private final Map<String, ChatCallbackPrx> users = new ConcurrentHashMap<>();
+    public static final int DEFAULT_QUEUE_DEPTH = 256;
+    public static final int DEFAULT_MAX_IN_FLIGHT = 32;
+
+    private final Map<String, UserSession> users = new ConcurrentHashMap<>();
+    private final DeliveryCounters counters = new DeliveryCounters();
+
+    private final int queueDepth;
+    private final int maxInFlight;
+    private final OutboundQueue.OverflowPolicy overflowPolicy;
+
+    public UserManager() {
+        this(DEFAULT_QUEUE_DEPTH, DEFAULT_MAX_IN_FLIGHT, OutboundQueue.OverflowPolicy.DROP_OLDEST);
+    }
+
+    public UserManager(int queueDepth, int maxInFlight, OutboundQueue.OverflowPolicy overflowPolicy) {
+        this.queueDepth = queueDepth;
+        this.maxInFlight = maxInFlight;
+        this.overflowPolicy = overflowPolicy;
+    }
 
     public boolean registerUser(String username, ChatCallbackPrx callback) {
-        if (users.containsKey(username)) {
+        OutboundQueue[] self = {null};
+        OutboundQueue queue = new OutboundQueue(username, callback, queueDepth, maxInFlight,
+                overflowPolicy, counters, () -> disconnect(username, self[0], callback));
+        self[0] = queue;
+        if (users.putIfAbsent(username, new UserSession(username, callback, queue)) != null) {
+            queue.close();
             return false;
         }
-        users.put(username, callback);
         return true;
     }
 
-    public void unregisterUser(String username) {
-        users.remove(username);
+    // Solo si sigue siendo la sesión registrada: el cierre tardío de una conexión
+    // anterior no saca a quien ya se volvió a conectar. false si no la quitó
+    public boolean unregisterUser(String username, UserSession session) {
+        if (session == null || !users.remove(username, session)) return false;
+        session.getQueue().close();
+        return true;
     }
 
     public ChatCallbackPrx getUser(String username) {
+        UserSession session = users.get(username);
+        return session != null ? session.getCallback() : null;
+    }
+
+    public UserSession getSession(String username) {
         return users.get(username);
     }
 
@@ -28,24 +65,110 @@ public class UserManager {
         return users.keySet().toArray(new String[0]);
     }
 
+    public int getConnectedCount() {
+        return users.size();
+    }
+
     public boolean isUserConnected(String username) {
         return users.containsKey(username);
     }
 
+    // Encola el callback en la cola de salida del usuario; nunca bloquea al
+    // emisor. Devuelve false si el usuario no está conectado.
+    public boolean deliver(String username, CallbackAction action) {
+        return deliver(username, null, action);
+    }
+
+    public boolean deliver(String username, String coalesceKey, CallbackAction action) {
+        UserSession session = users.get(username);
+        if (session == null) return false;
+        return session.getQueue().offer(coalesceKey, action);
+    }
+
+    // onLost corre si la cola acepta el callback pero no llega a entregarlo
+    // (descartado por desborde, cola cerrada al desconectarse o fallo del envío)
+    public boolean deliver(String username, CallbackAction action, Runnable onLost) {
+        UserSession session = users.get(username);
+        if (session == null) return false;
+        return session.getQueue().offer(null, action, onLost);
+    }
+
     public void notifyAll(String excludeUser, CallbackAction action) {
-        for (Map.Entry<String, ChatCallbackPrx> entry : users.entrySet()) {
-            if (!entry.getKey().equals(excludeUser)) {
-                try {
-                    action.execute(entry.getValue());
-                } catch (Exception e) {
-                    System.err.println("Error notificando a " + entry.getKey());
-                }
+        notifyAll(excludeUser, null, action);
+    }
+
+    public void notifyAll(String excludeUser, String coalesceKey, CallbackAction action) {
+        for (UserSession session : users.values()) {
+            if (!session.getUsername().equals(excludeUser)) {
+                session.getQueue().offer(coalesceKey, action);
+            }
+        }
+    }
+
+    // Expulsión de un consumidor lento: al cerrar la conexión se dispara el
+    // close callback registrado en registerUser, que hace la limpieza completa
+    private void disconnect(String username, OutboundQueue queue, ChatCallbackPrx callback) {
+        UserSession session = users.get(username);
+        if (session != null && session.getQueue() == queue) {
+            users.remove(username, session);
+        }
+        Connection connection = callback.ice_getCachedConnection();
+        if (connection != null) {
+            try {
+                connection.close(ConnectionClose.Forcefully);
+            } catch (Exception e) {
+                Log.warn("Error cerrando conexión de {}", username);
             }
         }
     }
 
+    public DeliveryCounters getCounters() { return counters; }
+
+    public OutboundQueue getQueue(String username) {
+        UserSession session = users.get(username);
+        return session != null ? session.getQueue() : null;
+    }
+
+    // Eventos esperando en todas las colas de salida
+    public long getQueuedTotal() {
+        long total = 0;
+        for (UserSession session : users.values()) {
+            total += session.getQueue().getDepth();
+        }
+        return total;
+    }
+
+    public long getInFlightTotal() {
+        long total = 0;
+        for (UserSession session : users.values()) {
+            total += session.getQueue().getInFlight();
+        }
+        return total;
+    }
+
+    // La cola más profunda que se vio entre los usuarios conectados
+    public long getMaxDepthSeen() {
+        long max = 0;
+        for (UserSession session : users.values()) {
+            max = Math.max(max, session.getQueue().getMaxDepthSeen());
+        }
+        return max;
+    }
+
+    public int getQueueDepth() { return queueDepth; }
+    public int getMaxInFlight() { return maxInFlight; }
+    public OutboundQueue.OverflowPolicy getOverflowPolicy() { return overflowPolicy; }
+
+    public List<OutboundQueue> listQueues() {
+        List<OutboundQueue> queues = new ArrayList<>();
+        for (UserSession session : users.values()) {
+            queues.add(session.getQueue());
+        }
+        return queues;
+    }
+
     @FunctionalInterface
     public interface CallbackAction {
-        void execute(ChatCallbackPrx callback) throws Exception;
+        CompletableFuture<Void> execute(ChatCallbackPrx callback);
     }
 }
@@ -0,0 +1,20 @@
+package com.icesi.chatapp.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Contador monotónico; LongAdder reparte la contención entre hilos
+public class Counter {
+    private final LongAdder value = new LongAdder();
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(long amount) {
+        value.add(amount);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+}
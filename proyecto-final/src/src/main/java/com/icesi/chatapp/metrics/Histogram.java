@@ -0,0 +1,79 @@
+package com.icesi.chatapp.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Histograma log-lineal al estilo HDR: cada potencia de dos se divide en 32
+// cubetas, así que cualquier valor se guarda con un error relativo < 3% en un
+// arreglo fijo y registrar es un incremento atómico sin asignar memoria.
+// Los valores menores que 64 se guardan exactos.
+public class Histogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    // Hasta 2^45 (unos 400 días en µs); lo mayor cae en la última cubeta
+    private static final int MAX_SHIFT = 40;
+    private static final long MAX_VALUE = (1L << (MAX_SHIFT + SUB_BITS + 1)) - 1;
+    private static final int BUCKETS = (MAX_SHIFT + 2) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        if (value > MAX_VALUE) value = MAX_VALUE;
+
+        counts.incrementAndGet(indexOf(value));
+        count.increment();
+        sum.add(value);
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    // Latencia en microsegundos desde un System.nanoTime() anterior
+    public void recordSince(long startNanos) {
+        record((System.nanoTime() - startNanos) / 1000);
+    }
+
+    public long getCount() { return count.sum(); }
+    public long getSum() { return sum.sum(); }
+    public long getMax() { return max.get(); }
+
+    public long getMean() {
+        long n = getCount();
+        return n > 0 ? getSum() / n : 0;
+    }
+
+    // Valor más alto de la cubeta donde cae el percentil (0-100)
+    public long getPercentile(double percentile) {
+        long total = getCount();
+        if (total == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    static int indexOf(long value) {
+        int msb = 63 - Long.numberOfLeadingZeros(value | 1);
+        int shift = Math.max(0, msb - SUB_BITS);
+        return (shift << SUB_BITS) + (int) (value >>> shift);
+    }
+
+    static long upperBound(int index) {
+        if (index < 2 * SUB_COUNT) return index;
+        int shift = (index >> SUB_BITS) - 1;
+        long top = index - ((long) shift << SUB_BITS);
+        return ((top + 1) << shift) - 1;
+    }
+}
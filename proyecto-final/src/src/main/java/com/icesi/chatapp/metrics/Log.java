@@ -0,0 +1,129 @@
+package com.icesi.chatapp.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Log asíncrono con niveles. Quien registra solo compara el nivel y encola;
+// un hilo aparte arma el texto ("{}" se reemplaza por cada argumento) y lo
+// imprime. Si la cola se llena la línea se descarta y se cuenta: el log nunca
+// frena a quien está entregando mensajes.
+public final class Log {
+    public enum Level { DEBUG, INFO, WARN, ERROR, OFF }
+
+    private static final int QUEUE_CAPACITY = 8192;
+
+    private static final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private static final LongAdder dropped = new LongAdder();
+    private static volatile Level level = Level.INFO;
+
+    static {
+        Thread writer = new Thread(Log::writerLoop, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        Metrics.gauge("log.dropped", dropped::sum);
+    }
+
+    private Log() {}
+
+    public static void setLevel(Level newLevel) {
+        level = newLevel;
+    }
+
+    // "debug", "INFO", ...; un valor desconocido deja INFO
+    public static void setLevel(String name) {
+        try {
+            level = Level.valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            level = Level.INFO;
+            System.err.println("Nivel de log desconocido: " + name + ", se usa INFO");
+        }
+    }
+
+    public static Level getLevel() {
+        return level;
+    }
+
+    public static boolean isDebugEnabled() {
+        return level == Level.DEBUG;
+    }
+
+    public static void debug(String template, Object... args) { log(Level.DEBUG, template, args); }
+    public static void info(String template, Object... args) { log(Level.INFO, template, args); }
+    public static void warn(String template, Object... args) { log(Level.WARN, template, args); }
+    public static void error(String template, Object... args) { log(Level.ERROR, template, args); }
+
+    // Espera a que la cola se vacíe (al apagar el servidor)
+    public static void flush() {
+        long deadline = System.currentTimeMillis() + 1000;
+        while (!queue.isEmpty() && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static void log(Level entryLevel, String template, Object[] args) {
+        if (entryLevel.ordinal() < level.ordinal()) return;
+        if (!queue.offer(new Entry(entryLevel, template, args))) {
+            dropped.increment();
+        }
+    }
+
+    private static void writerLoop() {
+        List<Entry> batch = new ArrayList<>();
+        while (true) {
+            try {
+                Entry first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch);
+                for (Entry entry : batch) {
+                    String line = format(entry.template, entry.args);
+                    if (entry.level.ordinal() >= Level.WARN.ordinal()) {
+                        System.err.println(line);
+                    } else {
+                        System.out.println(line);
+                    }
+                }
+                batch.clear();
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                batch.clear();
+            }
+        }
+    }
+
+    static String format(String template, Object[] args) {
+        if (args == null || args.length == 0) return template;
+
+        StringBuilder out = new StringBuilder(template.length() + 16 * args.length);
+        int arg = 0;
+        int from = 0;
+        int at;
+        while (arg < args.length && (at = template.indexOf("{}", from)) >= 0) {
+            out.append(template, from, at).append(args[arg++]);
+            from = at + 2;
+        }
+        return out.append(template, from, template.length()).toString();
+    }
+
+    private static class Entry {
+        final Level level;
+        final String template;
+        final Object[] args;
+
+        Entry(Level level, String template, Object[] args) {
+            this.level = level;
+            this.template = template;
+            this.args = args;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.icesi.chatapp.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+// Registro global de métricas. Es estático porque Tyrus crea un endpoint por
+// conexión y el servicio de Ice vive aparte; ambos escriben aquí. Los nombres
+// de latencias terminan en ".us" (microsegundos).
+public final class Metrics {
+    private static final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private static final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private static final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private Metrics() {}
+
+    public static Counter counter(String name) {
+        return counters.computeIfAbsent(name, n -> new Counter());
+    }
+
+    public static Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, n -> new Histogram());
+    }
+
+    // Valor que se lee al momento de exportar (tamaños de colas, usuarios conectados...)
+    public static void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    // Todas las métricas como valores planos, ordenadas por nombre:
+    // los histogramas se expanden en count, mean, p50, p90, p99, p99.9 y max
+    public static Map<String, Long> snapshot() {
+        Map<String, Long> values = new TreeMap<>();
+        counters.forEach((name, counter) -> values.put(name, counter.get()));
+        gauges.forEach((name, gauge) -> {
+            try {
+                values.put(name, gauge.getAsLong());
+            } catch (RuntimeException e) {
+                // Un gauge que falla no debe romper la exportación del resto
+            }
+        });
+        histograms.forEach((name, histogram) -> {
+            values.put(name + ".count", histogram.getCount());
+            values.put(name + ".mean", histogram.getMean());
+            for (double p : PERCENTILES) {
+                values.put(name + ".p" + formatPercentile(p), histogram.getPercentile(p));
+            }
+            values.put(name + ".max", histogram.getMax());
+        });
+        return values;
+    }
+
+    // Una línea "nombre valor" por métrica
+    public static String render() {
+        StringBuilder out = new StringBuilder();
+        snapshot().forEach((name, value) -> out.append(name).append(' ').append(value).append('\n'));
+        return out.toString();
+    }
+
+    private static String formatPercentile(double p) {
+        return p == Math.rint(p) ? String.valueOf((long) p) : String.valueOf(p);
+    }
+}
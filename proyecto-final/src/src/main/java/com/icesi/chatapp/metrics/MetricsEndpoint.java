@@ -0,0 +1,122 @@
+package com.icesi.chatapp.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+// Exporta el registro por HTTP (GET /metrics en localhost, texto plano) y por
+// JMX como un MBean com.icesi.chatapp:type=Metrics con un atributo por métrica.
+public class MetricsEndpoint implements AutoCloseable {
+    public static final String JMX_NAME = "com.icesi.chatapp:type=Metrics";
+
+    private final HttpServer http;
+    private final ObjectName jmxName;
+
+    private MetricsEndpoint(HttpServer http, ObjectName jmxName) {
+        this.http = http;
+        this.jmxName = jmxName;
+    }
+
+    // port 0 deja solo JMX
+    public static MetricsEndpoint start(int port) throws IOException {
+        HttpServer http = null;
+        if (port > 0) {
+            http = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+            http.createContext("/metrics", exchange -> {
+                byte[] body = Metrics.render().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            http.start();
+        }
+
+        ObjectName name = null;
+        try {
+            name = new ObjectName(JMX_NAME);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new MetricsMBean(), name);
+            }
+        } catch (Exception e) {
+            Log.warn("No se pudieron registrar las métricas en JMX: {}", e.getMessage());
+        }
+        return new MetricsEndpoint(http, name);
+    }
+
+    @Override
+    public void close() {
+        if (http != null) {
+            http.stop(0);
+        }
+        if (jmxName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(jmxName);
+            } catch (Exception e) {
+                // Ignorar
+            }
+        }
+    }
+
+    // MBean de solo lectura cuyos atributos son las métricas del momento
+    private static class MetricsMBean implements DynamicMBean {
+
+        @Override
+        public Object getAttribute(String attribute) {
+            return Metrics.snapshot().get(attribute);
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            Map<String, Long> values = Metrics.snapshot();
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                if (values.containsKey(attribute)) {
+                    list.add(new Attribute(attribute, values.get(attribute)));
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) {
+            throw new UnsupportedOperationException("Las métricas son de solo lectura");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) {
+            throw new UnsupportedOperationException(actionName);
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            Map<String, Long> values = Metrics.snapshot();
+            MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[values.size()];
+            int i = 0;
+            for (String name : values.keySet()) {
+                attributes[i++] = new MBeanAttributeInfo(name, "java.lang.Long", name, true, false, false);
+            }
+            return new MBeanInfo(MetricsMBean.class.getName(), "Métricas del servidor de chat",
+                    attributes, null, null, null);
+        }
+    }
+}
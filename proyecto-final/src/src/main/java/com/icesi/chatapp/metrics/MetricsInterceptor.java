@@ -0,0 +1,51 @@
+package com.icesi.chatapp.metrics;
+
+import com.zeroc.Ice.DispatchInterceptor;
+import com.zeroc.Ice.OutputStream;
+import com.zeroc.Ice.Request;
+import com.zeroc.Ice.UserException;
+
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Se registra en el adapter en lugar del servant y mide cada operación de
+// Slice: latencia hasta la respuesta (incluye lo que tarde una operación
+// ["amd"] en completarse) y errores, en ice.<operación>.us / .errors.
+public class MetricsInterceptor extends DispatchInterceptor {
+    private final com.zeroc.Ice.Object servant;
+    private final Map<String, Histogram> latencies = new ConcurrentHashMap<>();
+    private final Map<String, Counter> errors = new ConcurrentHashMap<>();
+
+    public MetricsInterceptor(com.zeroc.Ice.Object servant) {
+        this.servant = servant;
+    }
+
+    @Override
+    public CompletionStage<OutputStream> dispatch(Request request) throws UserException {
+        String operation = request.getCurrent().operation;
+        long start = System.nanoTime();
+
+        CompletionStage<OutputStream> result;
+        try {
+            result = servant.ice_dispatch(request);
+        } catch (UserException | RuntimeException e) {
+            finished(operation, start, true);
+            throw e;
+        }
+
+        // null: la operación respondió de forma síncrona
+        if (result == null) {
+            finished(operation, start, false);
+            return null;
+        }
+        return result.whenComplete((stream, error) -> finished(operation, start, error != null));
+    }
+
+    private void finished(String operation, long start, boolean failed) {
+        latencies.computeIfAbsent(operation, op -> Metrics.histogram("ice." + op + ".us")).recordSince(start);
+        if (failed) {
+            errors.computeIfAbsent(operation, op -> Metrics.counter("ice." + op + ".errors")).increment();
+        }
+    }
+}
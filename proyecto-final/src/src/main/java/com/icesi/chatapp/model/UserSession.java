@@ -1,16 +1,24 @@
 package com.icesi.chatapp.model;
 
 import Chat.ChatCallbackPrx;
+import com.icesi.chatapp.managers.OutboundQueue;
 
 public class UserSession {
     private String username;
     private ChatCallbackPrx callback;
+    private OutboundQueue queue;
+    // Se apaga si el cliente no implementa onMessagesBatch
+    private volatile boolean batchCallbacks = true;
 
-    public UserSession(String username, ChatCallbackPrx callback) {
+    public UserSession(String username, ChatCallbackPrx callback, OutboundQueue queue) {
         this.username = username;
         this.callback = callback;
+        this.queue = queue;
     }
 
     public String getUsername() { return username; }
     public ChatCallbackPrx getCallback() { return callback; }
+    public OutboundQueue getQueue() { return queue; }
+    public boolean supportsBatchCallbacks() { return batchCallbacks; }
+    public void disableBatchCallbacks() { batchCallbacks = false; }
 }
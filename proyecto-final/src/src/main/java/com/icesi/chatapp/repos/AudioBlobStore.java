@@ -0,0 +1,158 @@
+package com.icesi.chatapp.repos;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Almacén de audio direccionado por contenido: cada blob se guarda una sola vez
+// con su SHA-256 como nombre, repartido en subdirectorios (ab/cd/abcd...).
+// Las lecturas usan archivos mapeados en memoria, de modo que reproducir una
+// nota popular sirve los bytes desde la caché de páginas del sistema.
+public class AudioBlobStore {
+    private static final int MAX_MAPPED = 256;
+
+    private final File blobsDir;
+    private final File tmpDir;
+
+    // Blobs mapeados más usados (LRU); el GC libera los que salen
+    private final Map<String, MappedByteBuffer> mapped = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, MappedByteBuffer> eldest) {
+            return size() > MAX_MAPPED;
+        }
+    };
+
+    public AudioBlobStore(File baseDir) {
+        this.blobsDir = new File(baseDir, "blobs");
+        this.tmpDir = new File(baseDir, "tmp");
+        blobsDir.mkdirs();
+        tmpDir.mkdirs();
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static String hex(MessageDigest digest) {
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    // Incorpora un archivo ya escrito cuyo hash se conoce. Si el blob ya
+    // existía, el archivo se descarta (deduplicación).
+    public void adopt(File file, String hash) throws IOException {
+        File blob = blobFile(hash);
+        if (blob.exists()) {
+            Files.deleteIfExists(file.toPath());
+            return;
+        }
+        blob.getParentFile().mkdirs();
+        try {
+            Files.move(file.toPath(), blob.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            // Otro hilo guardó el mismo contenido a la vez
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    public String put(byte[] data) throws IOException {
+        MessageDigest digest = newDigest();
+        digest.update(data);
+        String hash = hex(digest);
+        if (exists(hash)) return hash;
+
+        File tmp = File.createTempFile("blob", ".tmp", tmpDir);
+        try (FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+        }
+        adopt(tmp, hash);
+        return hash;
+    }
+
+    // Copia con transferFrom (sin pasar por el heap) y calcula el hash sobre
+    // la copia mapeada en memoria
+    public String putFile(File source) throws IOException {
+        File tmp = File.createTempFile("blob", ".tmp", tmpDir);
+        MessageDigest digest = newDigest();
+
+        try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = in.size();
+            long copied = 0;
+            while (copied < size) {
+                long n = out.transferFrom(in, copied, size - copied);
+                if (n <= 0) break;
+                copied += n;
+            }
+            if (copied > 0) {
+                digest.update(out.map(FileChannel.MapMode.READ_ONLY, 0, copied));
+            }
+        }
+
+        String hash = hex(digest);
+        adopt(tmp, hash);
+        return hash;
+    }
+
+    public boolean exists(String hash) {
+        return blobFile(hash).exists();
+    }
+
+    public long size(String hash) {
+        File blob = blobFile(hash);
+        return blob.exists() ? blob.length() : -1;
+    }
+
+    // Vista de solo lectura de un rango del blob, sin copiarlo
+    public ByteBuffer read(String hash, long offset, int length) throws IOException {
+        MappedByteBuffer blob = map(hash);
+        if (blob == null || offset < 0 || offset >= blob.capacity() || length <= 0) {
+            return ByteBuffer.allocate(0);
+        }
+        ByteBuffer view = blob.asReadOnlyBuffer();
+        view.position((int) offset);
+        view.limit((int) Math.min(blob.capacity(), offset + length));
+        return view.slice();
+    }
+
+    private MappedByteBuffer map(String hash) throws IOException {
+        synchronized (mapped) {
+            MappedByteBuffer buffer = mapped.get(hash);
+            if (buffer != null) return buffer;
+        }
+
+        File blob = blobFile(hash);
+        if (!blob.exists()) return null;
+
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(blob.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        synchronized (mapped) {
+            mapped.put(hash, buffer);
+        }
+        return buffer;
+    }
+
+    private File blobFile(String hash) {
+        File shard = new File(new File(blobsDir, hash.substring(0, 2)), hash.substring(2, 4));
+        return new File(shard, hash);
+    }
+}
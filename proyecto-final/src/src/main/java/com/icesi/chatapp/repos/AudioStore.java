@@ -0,0 +1,174 @@
+package com.icesi.chatapp.repos;
+
+import com.icesi.chatapp.metrics.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Notas de voz subidas por partes. Cada parte se escribe directamente en un
+// archivo temporal (calculando el hash sobre la marcha) y al confirmar se
+// guarda en el AudioBlobStore; cada audioId es una referencia a un blob, así
+// que reenviar o volver a subir la misma nota no duplica los bytes.
+public class AudioStore {
+    private static final String AUDIO_DIR = "audio_history";
+    public static final int MAX_CHUNK_SIZE = 256 * 1024;
+    public static final long MAX_NOTE_SIZE = 16L * 1024 * 1024;
+    private static final long UPLOAD_TIMEOUT_MILLIS = 10 * 60 * 1000;
+
+    private final AudioBlobStore blobs;
+    private final File uploadsDir;
+    private final File refsDir;
+    private final Map<String, Upload> uploads = new ConcurrentHashMap<>();
+    // audioId -> hash del blob
+    private final Map<String, String> refs = new ConcurrentHashMap<>();
+
+    public AudioStore() {
+        this(new File(AUDIO_DIR));
+    }
+
+    public AudioStore(File baseDir) {
+        this.blobs = new AudioBlobStore(baseDir);
+        this.uploadsDir = new File(baseDir, "uploads");
+        this.refsDir = new File(baseDir, "refs");
+        uploadsDir.mkdirs();
+        refsDir.mkdirs();
+    }
+
+    // Devuelve el id de la nota, que también identifica la subida
+    public String beginUpload(String from) throws IOException {
+        expireStaleUploads();
+
+        String audioId = UUID.randomUUID().toString();
+        File part = new File(uploadsDir, audioId + ".part");
+        FileChannel channel = FileChannel.open(part.toPath(),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        uploads.put(audioId, new Upload(from, part, channel));
+        return audioId;
+    }
+
+    // Las partes deben llegar en orden: offset tiene que coincidir con lo ya escrito
+    public boolean appendChunk(String audioId, long offset, byte[] chunk) throws IOException {
+        Upload upload = uploads.get(audioId);
+        if (upload == null || chunk.length > MAX_CHUNK_SIZE) return false;
+
+        synchronized (upload) {
+            if (offset != upload.size || upload.size + chunk.length > MAX_NOTE_SIZE) return false;
+            ByteBuffer buffer = ByteBuffer.wrap(chunk);
+            while (buffer.hasRemaining()) {
+                upload.channel.write(buffer, upload.size + buffer.position());
+            }
+            upload.digest.update(chunk);
+            upload.size += chunk.length;
+            upload.lastActivity = System.currentTimeMillis();
+        }
+        return true;
+    }
+
+    // Devuelve el tamaño final, o -1 si la subida no existe o no es de 'from'
+    public long commitUpload(String audioId, String from) throws IOException {
+        Upload upload = uploads.get(audioId);
+        if (upload == null || !upload.from.equals(from)) return -1;
+        uploads.remove(audioId);
+
+        synchronized (upload) {
+            upload.channel.force(false);
+            upload.channel.close();
+            String hash = AudioBlobStore.hex(upload.digest);
+            blobs.adopt(upload.part, hash);
+            saveRef(audioId, hash);
+            return upload.size;
+        }
+    }
+
+    // Guarda una nota completa (API antigua de un solo byte[]) y devuelve su audioId
+    public String put(byte[] data) throws IOException {
+        String audioId = UUID.randomUUID().toString();
+        saveRef(audioId, blobs.put(data));
+        return audioId;
+    }
+
+    public String putFile(File source) throws IOException {
+        String audioId = UUID.randomUUID().toString();
+        saveRef(audioId, blobs.putFile(source));
+        return audioId;
+    }
+
+    // Vista de solo lectura del rango pedido sobre el blob mapeado en memoria
+    public ByteBuffer readRange(String audioId, long offset, int length) throws IOException {
+        String hash = resolve(audioId);
+        if (hash == null) return ByteBuffer.allocate(0);
+        return blobs.read(hash, offset, Math.min(length, MAX_CHUNK_SIZE));
+    }
+
+    public long size(String audioId) throws IOException {
+        String hash = resolve(audioId);
+        return hash != null ? blobs.size(hash) : -1;
+    }
+
+    private void saveRef(String audioId, String hash) throws IOException {
+        Files.write(new File(refsDir, audioId).toPath(), hash.getBytes(StandardCharsets.US_ASCII));
+        refs.put(audioId, hash);
+    }
+
+    private String resolve(String audioId) throws IOException {
+        String hash = refs.get(audioId);
+        if (hash != null) return hash;
+
+        File ref = refFile(audioId);
+        if (ref == null || !ref.exists()) return null;
+        hash = new String(Files.readAllBytes(ref.toPath()), StandardCharsets.US_ASCII).trim();
+        refs.put(audioId, hash);
+        return hash;
+    }
+
+    // Los ids los genera el servidor (UUID); cualquier otra cosa se rechaza
+    private File refFile(String audioId) {
+        try {
+            return new File(refsDir, UUID.fromString(audioId).toString());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private void expireStaleUploads() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<String, Upload>> it = uploads.entrySet().iterator();
+        while (it.hasNext()) {
+            Upload upload = it.next().getValue();
+            if (now - upload.lastActivity > UPLOAD_TIMEOUT_MILLIS) {
+                it.remove();
+                try {
+                    upload.channel.close();
+                    Files.deleteIfExists(upload.part.toPath());
+                } catch (IOException e) {
+                    Log.warn("Error eliminando subida de audio expirada: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static class Upload {
+        final String from;
+        final File part;
+        final FileChannel channel;
+        final MessageDigest digest = AudioBlobStore.newDigest();
+        long size;
+        long lastActivity = System.currentTimeMillis();
+
+        Upload(String from, File part, FileChannel channel) {
+            this.from = from;
+            this.part = part;
+            this.channel = channel;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.icesi.chatapp.repos;
+
+import java.util.Arrays;
+
+// Índice en memoria de una conversación: posición, tamaño y timestamp (epoch ms)
+// de cada registro dentro del log segmentado, en orden de escritura.
+public class ConversationIndex {
+    private long[] positions = new long[16];
+    private int[] lengths = new int[16];
+    private long[] timestamps = new long[16];
+    private int size;
+
+    public synchronized void add(long position, int length, long timestamp) {
+        if (size == positions.length) {
+            positions = Arrays.copyOf(positions, size * 2);
+            lengths = Arrays.copyOf(lengths, size * 2);
+            timestamps = Arrays.copyOf(timestamps, size * 2);
+        }
+        // Se mantiene no decreciente para poder buscar por fecha
+        if (size > 0 && timestamp < timestamps[size - 1]) {
+            timestamp = timestamps[size - 1];
+        }
+        positions[size] = position;
+        lengths[size] = length;
+        timestamps[size] = timestamp;
+        size++;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // Copia consistente para leer sin mantener el lock durante la E/S
+    public synchronized Snapshot snapshot() {
+        return new Snapshot(Arrays.copyOf(positions, size), Arrays.copyOf(lengths, size));
+    }
+
+    // Los últimos 'limit' registros con timestamp < beforeTimestamp (<= 0: los más recientes)
+    public synchronized Snapshot page(long beforeTimestamp, int limit) {
+        int end = beforeTimestamp <= 0 ? size : lowerBound(timestamps, beforeTimestamp);
+        int start = Math.max(0, end - limit);
+        return new Snapshot(Arrays.copyOfRange(positions, start, end), Arrays.copyOfRange(lengths, start, end));
+    }
+
+    // Los últimos 'limit' registros escritos antes de 'position'. Las posiciones son
+    // únicas y crecientes, así que no se repiten ni se saltan mensajes del mismo ms
+    public synchronized Snapshot pageBefore(long position, int limit) {
+        int end = lowerBound(positions, position);
+        int start = Math.max(0, end - limit);
+        return new Snapshot(Arrays.copyOfRange(positions, start, end), Arrays.copyOfRange(lengths, start, end));
+    }
+
+    private int lowerBound(long[] values, long value) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    public static class Snapshot {
+        private final long[] positions;
+        private final int[] lengths;
+
+        Snapshot(long[] positions, int[] lengths) {
+            this.positions = positions;
+            this.lengths = lengths;
+        }
+
+        public int size() { return positions.length; }
+        public long getPosition(int i) { return positions[i]; }
+        public int getLength(int i) { return lengths[i]; }
+    }
+}
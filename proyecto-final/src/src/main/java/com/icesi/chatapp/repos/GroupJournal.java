@@ -0,0 +1,122 @@
+package com.icesi.chatapp.repos;
+
+import com.icesi.chatapp.metrics.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+// Journal (write-ahead) de cambios de grupos desde el último snapshot.
+// Registro: [int longitud][byte operación][grupo][usuario], cadenas [short len][UTF-8]
+public class GroupJournal implements AutoCloseable {
+    public static final byte CREATE = 1;
+    public static final byte ADD = 2;
+    public static final byte REMOVE = 3;
+
+    private static final int MAX_STRING_BYTES = 0xFFFF;
+
+    @FunctionalInterface
+    public interface Visitor {
+        void apply(byte op, String groupName, String username);
+    }
+
+    private final FileChannel channel;
+    private long size;
+    private int entries;
+
+    public GroupJournal(File file) throws IOException {
+        this.channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.size = channel.size();
+    }
+
+    // Reaplica el journal; una cola incompleta (caída a mitad de escritura) se trunca
+    public synchronized int replay(Visitor visitor) throws IOException {
+        long offset = 0;
+        int applied = 0;
+        ByteBuffer header = ByteBuffer.allocate(4);
+
+        while (offset + 4 <= size) {
+            header.clear();
+            channel.read(header, offset);
+            header.flip();
+            int length = header.getInt();
+            if (length <= 0 || offset + 4 + length > size) break;
+
+            ByteBuffer record = ByteBuffer.allocate(length);
+            while (record.hasRemaining()) {
+                if (channel.read(record, offset + 4 + record.position()) < 0) break;
+            }
+            record.flip();
+            byte op = record.get();
+            String groupName = readString(record);
+            String username = readString(record);
+            visitor.apply(op, groupName, username);
+
+            offset += 4 + length;
+            applied++;
+        }
+
+        if (offset < size) {
+            Log.warn("Truncando journal de grupos en {}", offset);
+            channel.truncate(offset);
+            size = offset;
+        }
+        entries = applied;
+        return applied;
+    }
+
+    // IllegalArgumentException si un nombre no cabe en el prefijo de 16 bits
+    public synchronized void append(byte op, String groupName, String username) throws IOException {
+        byte[] group = shortString(groupName, "grupo");
+        byte[] user = shortString(username, "usuario");
+        int length = 1 + 2 + group.length + 2 + user.length;
+
+        ByteBuffer record = ByteBuffer.allocate(4 + length);
+        record.putInt(length).put(op);
+        record.putShort((short) group.length).put(group);
+        record.putShort((short) user.length).put(user);
+        record.flip();
+        while (record.hasRemaining()) {
+            channel.write(record, size + record.position());
+        }
+        // Los cambios de grupos son poco frecuentes: se confirman uno a uno
+        channel.force(false);
+        size += 4 + length;
+        entries++;
+    }
+
+    public synchronized void reset() throws IOException {
+        channel.truncate(0);
+        channel.force(true);
+        size = 0;
+        entries = 0;
+    }
+
+    public synchronized int getEntries() {
+        return entries;
+    }
+
+    private static byte[] shortString(String value, String field) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_BYTES) {
+            throw new IllegalArgumentException("Nombre de " + field + " demasiado largo: " + bytes.length + " bytes");
+        }
+        return bytes;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = Short.toUnsignedInt(buffer.getShort());
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+}
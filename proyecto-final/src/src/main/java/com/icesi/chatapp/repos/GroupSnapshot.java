@@ -0,0 +1,202 @@
+package com.icesi.chatapp.repos;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+// Snapshot inmutable de grupos y membresías, mapeado en memoria. Las entradas
+// están ordenadas por nombre y se localizan por búsqueda binaria sobre una
+// tabla de offsets, así que abrirlo no cuesta nada aunque tenga cientos de
+// miles de grupos: cada grupo se decodifica solo cuando alguien lo pide.
+//
+// [int magic][int versión][int nGrupos][int nUsuarios][int tablaGrupos][int tablaUsuarios]
+// entradas: [short len][clave][int n][n x (short len + valor)]
+// tablas:   offsets (int) de las entradas, ordenadas por clave
+public class GroupSnapshot {
+    private static final int MAGIC = 0x47525053; // "GRPS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+
+    private final ByteBuffer buffer;
+    private final int groupCount;
+    private final int userCount;
+    private final int groupTable;
+    private final int userTable;
+
+    private GroupSnapshot(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer == null) {
+            groupCount = userCount = groupTable = userTable = 0;
+            return;
+        }
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Snapshot de grupos inválido");
+        }
+        groupCount = buffer.getInt(8);
+        userCount = buffer.getInt(12);
+        groupTable = buffer.getInt(16);
+        userTable = buffer.getInt(20);
+    }
+
+    public static GroupSnapshot empty() {
+        try {
+            return new GroupSnapshot(null);
+        } catch (IOException e) {
+            // Sin buffer no se valida nada
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static GroupSnapshot open(File file) throws IOException {
+        if (!file.exists() || file.length() == 0) return empty();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new GroupSnapshot(mapped);
+        }
+    }
+
+    public int getGroupCount() { return groupCount; }
+    public int getUserCount() { return userCount; }
+
+    public boolean hasGroup(String groupName) {
+        return find(groupTable, groupCount, groupName) >= 0;
+    }
+
+    // Miembros del grupo como conjunto nuevo y mutable, o null si no está
+    public Set<String> loadMembers(String groupName) {
+        int entry = find(groupTable, groupCount, groupName);
+        return entry >= 0 ? readValues(entry) : null;
+    }
+
+    public Set<String> loadGroupsOf(String username) {
+        int entry = find(userTable, userCount, username);
+        return entry >= 0 ? readValues(entry) : null;
+    }
+
+    public List<String> groupNames() {
+        return keys(groupTable, groupCount);
+    }
+
+    public List<String> userNames() {
+        return keys(userTable, userCount);
+    }
+
+    // ==================== LECTURA ====================
+
+    private int find(int table, int count, String key) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int entry = buffer.getInt(table + 4 * mid);
+            int cmp = readString(entry).compareTo(key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    private List<String> keys(int table, int count) {
+        List<String> keys = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            keys.add(readString(buffer.getInt(table + 4 * i)));
+        }
+        return keys;
+    }
+
+    private Set<String> readValues(int entry) {
+        int position = entry + 2 + Short.toUnsignedInt(buffer.getShort(entry));
+        int count = buffer.getInt(position);
+        position += 4;
+
+        Set<String> values = ConcurrentHashMap.newKeySet(Math.max(4, count * 2));
+        for (int i = 0; i < count; i++) {
+            String value = readString(position);
+            values.add(value);
+            position += 2 + Short.toUnsignedInt(buffer.getShort(position));
+        }
+        return values;
+    }
+
+    private String readString(int position) {
+        int length = Short.toUnsignedInt(buffer.getShort(position));
+        byte[] bytes = new byte[length];
+        buffer.get(position + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // ==================== ESCRITURA ====================
+
+    // Los nombres deben venir ordenados (String.compareTo)
+    public static void write(File file,
+                             List<String> groupNames, Function<String, Collection<String>> membersOf,
+                             List<String> userNames, Function<String, Collection<String>> groupsOf)
+            throws IOException {
+        int[] groupOffsets = new int[groupNames.size()];
+        int[] userOffsets = new int[userNames.size()];
+
+        try (FileOutputStream fos = new FileOutputStream(file);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 64 * 1024))) {
+            // La cabecera se completa al final
+            out.write(new byte[HEADER_SIZE]);
+
+            for (int i = 0; i < groupNames.size(); i++) {
+                groupOffsets[i] = out.size();
+                writeEntry(out, groupNames.get(i), membersOf.apply(groupNames.get(i)));
+            }
+            for (int i = 0; i < userNames.size(); i++) {
+                userOffsets[i] = out.size();
+                writeEntry(out, userNames.get(i), groupsOf.apply(userNames.get(i)));
+            }
+
+            int groupTable = out.size();
+            for (int offset : groupOffsets) out.writeInt(offset);
+            int userTable = out.size();
+            for (int offset : userOffsets) out.writeInt(offset);
+            out.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION)
+                    .putInt(groupNames.size()).putInt(userNames.size())
+                    .putInt(groupTable).putInt(userTable)
+                    .flip();
+            FileChannel channel = fos.getChannel();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+        }
+    }
+
+    private static void writeEntry(DataOutputStream out, String key, Collection<String> values) throws IOException {
+        writeString(out, key);
+        out.writeInt(values.size());
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,69 @@
+package com.icesi.chatapp.repos;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+
+// Persistencia de grupos: snapshot compacto mapeado en memoria más un journal
+// con los cambios posteriores. Al compactar se escribe un snapshot nuevo y se
+// vacía el journal.
+public class GroupStore implements AutoCloseable {
+    private static final String GROUPS_DIR = "chat_history/groups";
+    private static final String SNAPSHOT_FILE = "groups.snapshot";
+    private static final String JOURNAL_FILE = "groups.journal";
+
+    private final File directory;
+    private final GroupJournal journal;
+    private volatile GroupSnapshot snapshot;
+
+    public GroupStore() throws IOException {
+        this(new File(GROUPS_DIR));
+    }
+
+    public GroupStore(File directory) throws IOException {
+        this.directory = directory;
+        directory.mkdirs();
+        this.snapshot = GroupSnapshot.open(new File(directory, SNAPSHOT_FILE));
+        this.journal = new GroupJournal(new File(directory, JOURNAL_FILE));
+    }
+
+    public GroupSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public int replay(GroupJournal.Visitor visitor) throws IOException {
+        return journal.replay(visitor);
+    }
+
+    // op: GroupJournal.CREATE / ADD / REMOVE
+    public void append(byte op, String groupName, String username) throws IOException {
+        journal.append(op, groupName, username);
+    }
+
+    public int getJournalEntries() {
+        return journal.getEntries();
+    }
+
+    // El llamador debe impedir cambios mientras se compacta. El snapshot
+    // anterior no se desmapea a mano: puede haber lecturas en curso sobre él,
+    // y el GC libera el mapeo cuando ya nadie lo referencia
+    public void compact(List<String> groupNames, Function<String, Collection<String>> membersOf,
+                        List<String> userNames, Function<String, Collection<String>> groupsOf) throws IOException {
+        File tmp = new File(directory, SNAPSHOT_FILE + ".tmp");
+        File target = new File(directory, SNAPSHOT_FILE);
+        GroupSnapshot.write(tmp, groupNames, membersOf, userNames, groupsOf);
+        Files.move(tmp.toPath(), target.toPath(),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        snapshot = GroupSnapshot.open(target);
+        journal.reset();
+    }
+
+    @Override
+    public void close() throws IOException {
+        journal.close();
+    }
+}
@@ -0,0 +1,107 @@
+package com.icesi.chatapp.repos;
+
+import com.icesi.chatapp.metrics.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+// Migración única del historial de texto (chat_history/*.txt) al log binario.
+// Cada archivo migrado se renombra a .txt.migrated para no importarlo dos veces.
+// El servidor debe estar detenido: el log se abre con un lock exclusivo.
+//
+// Los mensajes antiguos quedarían después de los nuevos si la conversación ya
+// tiene mensajes en el log (y el índice los reordenaría como recientes), así
+// que esos archivos no se migran y se avisa.
+//
+//   gradlew migrateHistory
+public class HistoryMigration {
+    private static final String HISTORY_DIR = "chat_history";
+    private static final String PRIVATE_PREFIX = "private_";
+    private static final String GROUP_PREFIX = "group_";
+    private static final String SUFFIX = ".txt";
+
+    private int migrated;
+    private int skipped;
+    private int refused;
+
+    public static void main(String[] args) throws IOException {
+        File directory = new File(args.length > 0 ? args[0] : HISTORY_DIR);
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX)
+                && (name.startsWith(PRIVATE_PREFIX) || name.startsWith(GROUP_PREFIX)));
+        if (files == null || files.length == 0) {
+            System.out.println(" No hay historial de texto para migrar en " + directory);
+            return;
+        }
+        Arrays.sort(files);
+
+        long start = System.nanoTime();
+        HistoryMigration migration = new HistoryMigration();
+        try (SegmentedMessageLog log = new SegmentedMessageLog()) {
+            for (File file : files) {
+                migration.migrateFile(file, log);
+            }
+        }
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.println(" Migración terminada en " + elapsedMs + " ms: " + files.length + " archivos, "
+                + migration.migrated + " mensajes, " + migration.skipped + " líneas descartadas, "
+                + migration.refused + " archivos sin migrar");
+        // Los avisos del log (p. ej. segmentos truncados) salen por el hilo de Log
+        Log.flush();
+    }
+
+    private void migrateFile(File file, SegmentedMessageLog log) throws IOException {
+        String name = file.getName();
+        String conversation = name.substring(0, name.length() - SUFFIX.length());
+        boolean isPrivate = name.startsWith(PRIVATE_PREFIX);
+        String previous = null;
+        List<MessageRecord> records = new ArrayList<>();
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) continue;
+
+                // Las versiones anteriores escribían cada mensaje privado dos veces seguidas
+                if (isPrivate && line.equals(previous)) continue;
+                previous = line;
+
+                MessageRecord record = isPrivate
+                        ? LegacyHistoryFormat.parsePrivateFileLine(line, conversation.substring(PRIVATE_PREFIX.length()))
+                        : LegacyHistoryFormat.parseGroup(line, conversation.substring(GROUP_PREFIX.length()));
+                if (record == null) {
+                    skipped++;
+                    continue;
+                }
+                records.add(record);
+            }
+        }
+        if (!records.isEmpty() && log.hasConversation(records.get(0))) {
+            refused++;
+            System.err.println(" " + name + ": la conversación ya tiene mensajes en el log, no se migra");
+            return;
+        }
+
+        // Se encolan sin esperar para que el escritor los agrupe en lotes grandes
+        List<CompletableFuture<Long>> pending = new ArrayList<>(records.size());
+        for (MessageRecord record : records) {
+            pending.add(log.appendAsync(record));
+        }
+        // Solo se marca como migrado si todo quedó escrito
+        CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).join();
+        int count = pending.size();
+        migrated += count;
+
+        File done = new File(file.getParentFile(), name + ".migrated");
+        if (!file.renameTo(done)) {
+            System.err.println(" No se pudo renombrar " + name + "; se volvería a migrar");
+        }
+        System.out.println(" " + name + ": " + count + " mensajes");
+    }
+}
@@ -1,15 +1,30 @@
 package com.icesi.chatapp.repos;
 
-import Chat.Message;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 public interface IMessageRepo {
     void savePrivateMessage(String from, String to, String content);
-    List<String> getPrivateHistory(String user1, String user2);
+    List<MessageRecord> getPrivateHistory(String user1, String user2);
+    // Los últimos 'limit' mensajes anteriores al cursor: con beforeSeq > 0 los de
+    // secuencia menor, si no los de timestamp < beforeTimestamp (<= 0: los más recientes)
+    List<MessageRecord> getPrivateHistoryPage(String user1, String user2, long beforeTimestamp, long beforeSeq,
+                                              int limit);
 
     void saveGroupMessage(String from, String groupName, String content);
-    List<String> getGroupHistory(String groupName);
+    List<MessageRecord> getGroupHistory(String groupName);
+    List<MessageRecord> getGroupHistoryPage(String groupName, long beforeTimestamp, long beforeSeq, int limit);
 
     void saveAudioMessage(String from, String to, String audioId);
     void saveGroupAudioMessage(String from, String groupName, String audioId);
+
+    // Guarda sin bloquear al llamador; el futuro se completa cuando el mensaje
+    // ya es visible para las lecturas del historial, con la secuencia asignada
+    // (0 si el repositorio no la conoce)
+    CompletableFuture<Long> saveAsync(MessageRecord record);
+
+    // Mensajes que contienen todos los términos, del más reciente al más antiguo,
+    // solo de los privados del usuario y de los grupos indicados
+    List<MessageRecord> searchMessages(String user, Set<String> groups, String query, int limit);
 }
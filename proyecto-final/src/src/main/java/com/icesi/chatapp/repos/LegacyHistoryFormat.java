@@ -0,0 +1,104 @@
+package com.icesi.chatapp.repos;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+// Lectura del formato de texto anterior:
+//   [yyyy-MM-dd HH:mm:ss] emisor -> receptor: contenido
+//   [yyyy-MM-dd HH:mm:ss] emisor en grupo: contenido
+// Como los participantes ya se conocen (por la conversación o el archivo), el
+// contenido se separa comparando el prefijo exacto y no buscando ':', así que
+// los dos puntos o corchetes dentro del mensaje no lo rompen.
+public final class LegacyHistoryFormat {
+    private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final String AUDIO_PREFIX = "[AUDIO:";
+
+    private LegacyHistoryFormat() {
+    }
+
+    // null si la línea no corresponde a la conversación entre user1 y user2
+    public static MessageRecord parsePrivate(String line, String user1, String user2) {
+        int start = bodyStart(line);
+        if (start < 0) return null;
+
+        String sender;
+        String receiver;
+        if (line.startsWith(user1 + " -> " + user2 + ": ", start)) {
+            sender = user1;
+            receiver = user2;
+        } else if (line.startsWith(user2 + " -> " + user1 + ": ", start)) {
+            sender = user2;
+            receiver = user1;
+        } else {
+            return null;
+        }
+        int contentStart = start + sender.length() + 4 + receiver.length() + 2;
+        return build(line, sender, receiver, MessageRecord.Type.PRIVATE, contentStart);
+    }
+
+    public static MessageRecord parseGroup(String line, String groupName) {
+        int start = bodyStart(line);
+        if (start < 0) return null;
+
+        int separator = line.indexOf(" en " + groupName + ": ", start);
+        if (separator <= start) return null;
+
+        String sender = line.substring(start, separator);
+        int contentStart = separator + 4 + groupName.length() + 2;
+        return build(line, sender, groupName, MessageRecord.Type.GROUP, contentStart);
+    }
+
+    // Línea de un archivo private_<a>_<b>.txt: 'participants' es "a_b" ordenado y
+    // con el emisor de la línea se deduce el otro aunque los nombres tengan '_'
+    public static MessageRecord parsePrivateFileLine(String line, String participants) {
+        String sender = privateSender(line);
+        if (sender == null) return null;
+
+        String receiver;
+        if (participants.startsWith(sender + "_")) {
+            receiver = participants.substring(sender.length() + 1);
+        } else if (participants.endsWith("_" + sender)) {
+            receiver = participants.substring(0, participants.length() - sender.length() - 1);
+        } else {
+            return null;
+        }
+        return parsePrivate(line, sender, receiver);
+    }
+
+    private static String privateSender(String line) {
+        int start = bodyStart(line);
+        if (start < 0) return null;
+        int arrow = line.indexOf(" -> ", start);
+        return arrow > start ? line.substring(start, arrow) : null;
+    }
+
+    private static MessageRecord build(String line, String sender, String target,
+                                       MessageRecord.Type type, int contentStart) {
+        long timestamp = parseTimestamp(line.substring(1, line.indexOf(']')));
+        String content = line.substring(contentStart);
+
+        // "[AUDIO:id]" o, en registros antiguos, "[AUDIO: id]"
+        if (content.startsWith(AUDIO_PREFIX) && content.endsWith("]")) {
+            String audioRef = content.substring(AUDIO_PREFIX.length(), content.length() - 1).trim();
+            return MessageRecord.audio(timestamp, sender, target, type, audioRef);
+        }
+        return MessageRecord.text(timestamp, sender, target, type, content);
+    }
+
+    private static int bodyStart(String line) {
+        if (line.isEmpty() || line.charAt(0) != '[') return -1;
+        int close = line.indexOf(']');
+        if (close < 0 || close + 2 > line.length() || line.charAt(close + 1) != ' ') return -1;
+        return close + 2;
+    }
+
+    private static long parseTimestamp(String timestamp) {
+        try {
+            return LocalDateTime.parse(timestamp.trim(), formatter)
+                    .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
+}
@@ -1,18 +1,30 @@
 package com.icesi.chatapp.repos;
 
+import com.icesi.chatapp.metrics.Log;
+
 import java.io.*;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 public class MessageHistory implements IMessageRepo {
     private static final String HISTORY_DIR = "chat_history";
     private static final String AUDIO_HISTORY_DIR = "audio_history";
     private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
-    static {
-        new File(HISTORY_DIR).mkdirs();
-        new File(AUDIO_HISTORY_DIR).mkdirs();
+    private final File historyDir;
+    private final AudioStore audioStore;
+
+    public MessageHistory() {
+        this(new File(HISTORY_DIR), new File(AUDIO_HISTORY_DIR));
+    }
+
+    public MessageHistory(File historyDir, File audioDir) {
+        this.historyDir = historyDir;
+        historyDir.mkdirs();
+        audioDir.mkdirs();
+        this.audioStore = new AudioStore(audioDir);
     }
 
 
@@ -21,8 +33,8 @@ public class MessageHistory implements IMessageRepo {
         String timestamp = LocalDateTime.now().format(formatter);
         String logEntry = String.format("[%s] %s -> %s: %s%n", timestamp, sender, receiver, message);
 
+        // Ambos participantes comparten el mismo archivo (nombres ordenados)
         appendToFile(getPrivateHistoryFile(sender, receiver), logEntry);
-        appendToFile(getPrivateHistoryFile(receiver, sender), logEntry);
     }
 
     @Override
@@ -45,48 +57,132 @@ public class MessageHistory implements IMessageRepo {
     }
 
 
+    // Los archivos de texto se escriben en el acto, así que el futuro ya sale completo
+    @Override
+    public CompletableFuture<Long> saveAsync(MessageRecord record) {
+        boolean group = record.getType() == MessageRecord.Type.GROUP;
+        if (record.isAudio()) {
+            if (group) saveGroupAudioMessage(record.getSender(), record.getTarget(), record.getAudioRef());
+            else saveAudioMessage(record.getSender(), record.getTarget(), record.getAudioRef());
+        } else {
+            if (group) saveGroupMessage(record.getSender(), record.getTarget(), record.getContent());
+            else savePrivateMessage(record.getSender(), record.getTarget(), record.getContent());
+        }
+        // Sin índice no se conoce la línea asignada sin releer el archivo
+        return CompletableFuture.completedFuture(0L);
+    }
+
     public void savePrivateAudio(String sender, String receiver, File audioFile) {
         String timestamp = LocalDateTime.now().format(formatter);
-        File audioHistoryFile = copyAudioToHistory(audioFile, sender, receiver, timestamp, false);
+        String audioId = copyAudioToHistory(audioFile);
         String logEntry = String.format("[%s] %s -> %s: [AUDIO: %s]%n",
-                timestamp, sender, receiver, audioHistoryFile.getName());
+                timestamp, sender, receiver, audioId);
 
         appendToFile(getPrivateHistoryFile(sender, receiver), logEntry);
-        appendToFile(getPrivateHistoryFile(receiver, sender), logEntry);
     }
 
     public void saveGroupAudio(String sender, String groupName, File audioFile) {
         String timestamp = LocalDateTime.now().format(formatter);
-        File audioHistoryFile = copyAudioToHistory(audioFile, sender, groupName, timestamp, true);
+        String audioId = copyAudioToHistory(audioFile);
         String logEntry = String.format("[%s] %s en %s: [AUDIO: %s]%n",
-                timestamp, sender, groupName, audioHistoryFile.getName());
+                timestamp, sender, groupName, audioId);
 
         appendToFile(getGroupHistoryFile(groupName), logEntry);
     }
 
+    // La secuencia es el número de mensaje dentro del archivo, que solo crece al final
+    @Override
+    public List<MessageRecord> getPrivateHistory(String user1, String user2) {
+        List<MessageRecord> history = new ArrayList<>();
+        for (String line : readHistoryFromFile(getPrivateHistoryFile(user1, user2))) {
+            MessageRecord record = LegacyHistoryFormat.parsePrivate(line, user1, user2);
+            if (record != null) history.add(record.withSeq(history.size() + 1));
+        }
+        return history;
+    }
+
+    @Override
+    public List<MessageRecord> getGroupHistory(String groupName) {
+        List<MessageRecord> history = new ArrayList<>();
+        for (String line : readHistoryFromFile(getGroupHistoryFile(groupName))) {
+            MessageRecord record = LegacyHistoryFormat.parseGroup(line, groupName);
+            if (record != null) history.add(record.withSeq(history.size() + 1));
+        }
+        return history;
+    }
+
+
+    // Sin índice: recorre los archivos del usuario y de sus grupos
+    @Override
+    public List<MessageRecord> searchMessages(String user, Set<String> groups, String query, int limit) {
+        Set<String> terms = SearchIndex.tokenize(query);
+        List<MessageRecord> results = new ArrayList<>();
+        if (terms.isEmpty() || limit <= 0) return results;
+
+        File[] privateFiles = historyDir.listFiles((dir, name) ->
+                name.startsWith("private_") && name.endsWith(".txt")
+                        && (name.startsWith("private_" + user + "_") || name.endsWith("_" + user + ".txt")));
+        if (privateFiles != null) {
+            for (File file : privateFiles) {
+                String name = file.getName();
+                String participants = name.substring("private_".length(), name.length() - ".txt".length());
+                for (String line : readHistoryFromFile(file)) {
+                    MessageRecord record = LegacyHistoryFormat.parsePrivateFileLine(line, participants);
+                    if (record == null) continue;
+                    boolean mine = record.getSender().equals(user) || record.getTarget().equals(user);
+                    if (mine && matches(record, terms)) results.add(record);
+                }
+            }
+        }
+        for (String groupName : groups) {
+            for (MessageRecord record : getGroupHistory(groupName)) {
+                if (matches(record, terms)) results.add(record);
+            }
+        }
+
+        results.sort((a, b) -> Long.compare(b.getTimestamp(), a.getTimestamp()));
+        return new ArrayList<>(results.subList(0, Math.min(limit, results.size())));
+    }
+
+    private static boolean matches(MessageRecord record, Set<String> terms) {
+        return !record.isAudio() && SearchIndex.tokenize(record.getContent()).containsAll(terms);
+    }
+
+    // Sin índice: se lee el archivo completo y se recorta en memoria
     @Override
-    public List<String> getPrivateHistory(String user1, String user2) {
-        File historyFile = getPrivateHistoryFile(user1, user2);
-        return readHistoryFromFile(historyFile);
+    public List<MessageRecord> getPrivateHistoryPage(String user1, String user2, long beforeTimestamp, long beforeSeq,
+                                                     int limit) {
+        return pageOf(getPrivateHistory(user1, user2), beforeTimestamp, beforeSeq, limit);
     }
 
     @Override
-    public List<String> getGroupHistory(String groupName) {
-        File historyFile = getGroupHistoryFile(groupName);
-        return readHistoryFromFile(historyFile);
+    public List<MessageRecord> getGroupHistoryPage(String groupName, long beforeTimestamp, long beforeSeq, int limit) {
+        return pageOf(getGroupHistory(groupName), beforeTimestamp, beforeSeq, limit);
     }
 
+    private List<MessageRecord> pageOf(List<MessageRecord> records, long beforeTimestamp, long beforeSeq, int limit) {
+        int end = records.size();
+        if (beforeSeq > 0) {
+            end = (int) Math.min(end, beforeSeq - 1);
+        } else if (beforeTimestamp > 0) {
+            while (end > 0 && records.get(end - 1).getTimestamp() >= beforeTimestamp) {
+                end--;
+            }
+        }
+        int start = Math.max(0, end - Math.max(0, limit));
+        return new ArrayList<>(records.subList(start, end));
+    }
 
     private File getPrivateHistoryFile(String user1, String user2) {
         List<String> users = Arrays.asList(user1, user2);
         Collections.sort(users);
         String fileName = "private_" + users.get(0) + "_" + users.get(1) + ".txt";
-        return new File(HISTORY_DIR, fileName);
+        return new File(historyDir, fileName);
     }
 
     private File getGroupHistoryFile(String groupName) {
         String fileName = "group_" + groupName + ".txt";
-        return new File(HISTORY_DIR, fileName);
+        return new File(historyDir, fileName);
     }
 
     private void appendToFile(File file, String content) {
@@ -95,7 +191,7 @@ public class MessageHistory implements IMessageRepo {
             bw.write(content);
             bw.flush();
         } catch (IOException e) {
-            System.err.println("Error al guardar en historial: " + e.getMessage());
+            Log.error("Error al guardar en historial: {}", e.getMessage());
         }
     }
 
@@ -109,32 +205,18 @@ public class MessageHistory implements IMessageRepo {
                 history.add(line);
             }
         } catch (IOException e) {
-            System.err.println("Error al leer historial: " + e.getMessage());
+            Log.error("Error al leer historial: {}", e.getMessage());
         }
         return history;
     }
 
-    private File copyAudioToHistory(File sourceAudio, String sender, String destination,
-                                    String timestamp, boolean isGroup) {
-        String cleanTimestamp = timestamp.replace(":", "-").replace(" ", "_");
-        String prefix = isGroup ? "group_" + destination : "private_" + sender + "_" + destination;
-        String fileName = prefix + "_" + cleanTimestamp + "_" + sourceAudio.getName();
-
-        File destFile = new File(AUDIO_HISTORY_DIR, fileName);
-
-        try (FileInputStream fis = new FileInputStream(sourceAudio);
-             FileOutputStream fos = new FileOutputStream(destFile)) {
-
-            byte[] buffer = new byte[4096];
-            int bytesRead;
-            while ((bytesRead = fis.read(buffer)) != -1) {
-                fos.write(buffer, 0, bytesRead);
-            }
-
+    // Se guarda en el almacén de blobs (transferFrom, deduplicado por contenido)
+    private String copyAudioToHistory(File sourceAudio) {
+        try {
+            return audioStore.putFile(sourceAudio);
         } catch (IOException e) {
-            System.err.println("Error al copiar audio al historial: " + e.getMessage());
+            Log.error("Error al copiar audio al historial: {}", e.getMessage());
+            return sourceAudio.getName();
         }
-
-        return destFile;
     }
 }
@@ -0,0 +1,70 @@
+package com.icesi.chatapp.repos;
+
+// Mensaje tal como lo guarda el repositorio: sin texto formateado, con el
+// timestamp en epoch ms y la referencia al audio separada del contenido.
+public class MessageRecord {
+    public enum Type {
+        PRIVATE("private"),
+        GROUP("group");
+
+        private final String label;
+
+        Type(String label) {
+            this.label = label;
+        }
+
+        // Valor de Chat.Message.type
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private final long timestamp;
+    private final String sender;
+    private final String target;
+    private final Type type;
+    private final String content;
+    private final String audioRef;
+    // Orden dentro de la conversación asignado por el repositorio (0 si aún no se guardó)
+    private final long seq;
+
+    public MessageRecord(long timestamp, String sender, String target, Type type, String content, String audioRef) {
+        this(timestamp, sender, target, type, content, audioRef, 0);
+    }
+
+    private MessageRecord(long timestamp, String sender, String target, Type type, String content,
+                          String audioRef, long seq) {
+        this.timestamp = timestamp;
+        this.sender = sender;
+        this.target = target;
+        this.type = type;
+        this.content = content;
+        this.audioRef = audioRef;
+        this.seq = seq;
+    }
+
+    public static MessageRecord text(long timestamp, String sender, String target, Type type, String content) {
+        return new MessageRecord(timestamp, sender, target, type, content, null);
+    }
+
+    public static MessageRecord audio(long timestamp, String sender, String target, Type type, String audioRef) {
+        return new MessageRecord(timestamp, sender, target, type, "", audioRef);
+    }
+
+    public long getTimestamp() { return timestamp; }
+    public String getSender() { return sender; }
+    // Destinatario en privados, nombre del grupo en grupos
+    public String getTarget() { return target; }
+    public Type getType() { return type; }
+    public String getContent() { return content; }
+    public String getAudioRef() { return audioRef; }
+    public long getSeq() { return seq; }
+
+    public MessageRecord withSeq(long seq) {
+        return new MessageRecord(timestamp, sender, target, type, content, audioRef, seq);
+    }
+
+    public boolean isAudio() {
+        return audioRef != null;
+    }
+}
@@ -0,0 +1,388 @@
+package com.icesi.chatapp.repos;
+
+import com.icesi.chatapp.metrics.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Buzón persistente por usuario con lo que recibió mientras estaba desconectado.
+// Un archivo por usuario: [int magic][int versión][long base][long cursor][registros...].
+// Los offsets que ve el cliente son lógicos (base + posición en el archivo) y
+// el cursor es el offset hasta el que ya confirmó la entrega. Cuando lo
+// confirma todo, el archivo se trunca y la base avanza: los offsets nunca se
+// reutilizan, así que un ack repetido o tardío de un lote anterior no salta
+// mensajes que llegaron después.
+//
+// Solo los buzones usados hace poco tienen el archivo abierto (LRU): al salir
+// del LRU se sincronizan y se cierran, y se reabren cuando vuelven a llegar mensajes.
+public class OfflineInbox implements AutoCloseable {
+    private static final String INBOX_DIR = "chat_history/inbox";
+    private static final String SUFFIX = ".inbox";
+    private static final int MAGIC = 0x494E4258; // "INBX"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+    // Formato anterior: [long cursor][registros...], con offsets que se reutilizaban
+    private static final int OLD_HEADER_SIZE = 8;
+    private static final long MAX_INBOX_BYTES = 8L * 1024 * 1024;
+    private static final long SYNC_INTERVAL_MILLIS = 1000;
+    private static final int MAX_OPEN_INBOXES = 256;
+
+    private final File directory;
+    // En orden de acceso; abrir y cerrar archivos se hace con su lock tomado
+    private final LinkedHashMap<String, UserInbox> open = new LinkedHashMap<>(64, 0.75f, true);
+    private final ScheduledExecutorService syncer;
+    private final AtomicLong stored = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    public OfflineInbox() {
+        this(new File(INBOX_DIR));
+    }
+
+    public OfflineInbox(File directory) {
+        this.directory = directory;
+        directory.mkdirs();
+
+        // Igual que el log de mensajes: force() agrupado como máximo cada segundo
+        syncer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "offline-inbox-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        syncer.scheduleWithFixedDelay(this::syncAll, SYNC_INTERVAL_MILLIS, SYNC_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    public boolean append(String username, MessageRecord record) {
+        try {
+            byte[] encoded = SegmentedMessageLog.encodeRecord(record);
+            if (withInbox(username, inbox -> inbox.append(encoded))) {
+                stored.incrementAndGet();
+                return true;
+            }
+            dropped.incrementAndGet();
+            Log.warn("Buzón de {} lleno, se descarta un mensaje", username);
+        } catch (IOException | IllegalArgumentException e) {
+            dropped.incrementAndGet();
+            Log.error("Error guardando en buzón de {}: {}", username, e.getMessage());
+        }
+        return false;
+    }
+
+    // Hasta maxMessages pendientes a partir del cursor; null si no hay nada
+    public Batch pending(String username, int maxMessages) {
+        if (!inboxFile(username).exists()) return null;
+        try {
+            return withInbox(username, inbox -> inbox.read(maxMessages));
+        } catch (IOException e) {
+            Log.error("Error leyendo buzón de {}: {}", username, e.getMessage());
+            return null;
+        }
+    }
+
+    // El cliente recibió todo hasta endOffset
+    public void ack(String username, long endOffset) {
+        if (!inboxFile(username).exists()) return;
+        try {
+            withInbox(username, inbox -> {
+                inbox.ack(endOffset);
+                return null;
+            });
+        } catch (IOException e) {
+            Log.error("Error confirmando buzón de {}: {}", username, e.getMessage());
+        }
+    }
+
+    public long getStored() { return stored.get(); }
+    public long getDropped() { return dropped.get(); }
+
+    public int getOpenInboxes() {
+        synchronized (open) {
+            return open.size();
+        }
+    }
+
+    // Si el buzón salió del LRU entre obtenerlo y usarlo, se vuelve a abrir
+    private <T> T withInbox(String username, InboxOperation<T> operation) throws IOException {
+        while (true) {
+            UserInbox inbox = inboxOf(username);
+            synchronized (inbox) {
+                if (!inbox.isClosed()) return operation.apply(inbox);
+            }
+        }
+    }
+
+    // Con el lock del LRU tomado: nunca hay dos UserInbox abiertos sobre el mismo archivo
+    private UserInbox inboxOf(String username) throws IOException {
+        synchronized (open) {
+            UserInbox inbox = open.get(username);
+            if (inbox != null) return inbox;
+
+            inbox = new UserInbox(inboxFile(username));
+            open.put(username, inbox);
+            if (open.size() > MAX_OPEN_INBOXES) {
+                Iterator<UserInbox> eldest = open.values().iterator();
+                UserInbox evicted = eldest.next();
+                eldest.remove();
+                try {
+                    evicted.close();
+                } catch (IOException e) {
+                    Log.error("Error cerrando buzón: {}", e.getMessage());
+                }
+            }
+            return inbox;
+        }
+    }
+
+    private List<UserInbox> openInboxes() {
+        synchronized (open) {
+            return new ArrayList<>(open.values());
+        }
+    }
+
+    private File inboxFile(String username) {
+        return new File(directory, URLEncoder.encode(username, StandardCharsets.UTF_8) + SUFFIX);
+    }
+
+    private void syncAll() {
+        for (UserInbox inbox : openInboxes()) {
+            try {
+                inbox.sync();
+            } catch (IOException e) {
+                Log.error("Error sincronizando buzón: {}", e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        syncer.shutdown();
+        synchronized (open) {
+            for (UserInbox inbox : open.values()) {
+                try {
+                    inbox.close();
+                } catch (IOException e) {
+                    // Ignorar
+                }
+            }
+            open.clear();
+        }
+    }
+
+    @FunctionalInterface
+    private interface InboxOperation<T> {
+        T apply(UserInbox inbox) throws IOException;
+    }
+
+    // Mensajes leídos del buzón y el offset que hay que confirmar tras entregarlos
+    public static class Batch {
+        private final List<MessageRecord> messages;
+        private final long endOffset;
+        private final boolean more;
+
+        Batch(List<MessageRecord> messages, long endOffset, boolean more) {
+            this.messages = messages;
+            this.endOffset = endOffset;
+            this.more = more;
+        }
+
+        public List<MessageRecord> getMessages() { return messages; }
+        public long getEndOffset() { return endOffset; }
+        // Quedaron mensajes después de este lote
+        public boolean hasMore() { return more; }
+    }
+
+    private static class UserInbox {
+        private final FileChannel channel;
+        // Offset lógico de la posición 0 del archivo
+        private long base;
+        // Lógico, como los offsets que recibe el cliente
+        private long cursor;
+        // Posición de fin en el archivo
+        private long size;
+        private boolean dirty;
+        private boolean closed;
+
+        UserInbox(File file) throws IOException {
+            upgrade(file);
+            channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            size = channel.size();
+            if (size < HEADER_SIZE) {
+                cursor = HEADER_SIZE;
+                reset();
+            } else {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                channel.read(header, 0);
+                header.flip();
+                if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                    channel.close();
+                    throw new IOException("Buzón con formato desconocido: " + file.getName());
+                }
+                base = header.getLong();
+                cursor = Math.max(base + HEADER_SIZE, Math.min(header.getLong(), base + size));
+                size = validEnd();
+            }
+        }
+
+        synchronized boolean append(byte[] record) throws IOException {
+            if (size - position(cursor) + record.length > MAX_INBOX_BYTES) return false;
+
+            ByteBuffer buffer = ByteBuffer.wrap(record);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, size + buffer.position());
+            }
+            size += record.length;
+            dirty = true;
+            return true;
+        }
+
+        synchronized Batch read(int maxMessages) throws IOException {
+            long offset = position(cursor);
+            if (offset >= size) return null;
+
+            List<MessageRecord> messages = new ArrayList<>();
+            ByteBuffer header = ByteBuffer.allocate(4);
+            while (offset < size && messages.size() < maxMessages) {
+                header.clear();
+                channel.read(header, offset);
+                header.flip();
+                int length = 4 + header.getInt();
+
+                ByteBuffer record = ByteBuffer.allocate(length);
+                while (record.hasRemaining()) {
+                    channel.read(record, offset + record.position());
+                }
+                record.flip();
+                messages.add(SegmentedMessageLog.decodeRecord(record));
+                offset += length;
+            }
+            return new Batch(messages, base + offset, offset < size);
+        }
+
+        // Un endOffset ya confirmado (ack repetido o de un lote anterior) no hace nada
+        synchronized void ack(long endOffset) throws IOException {
+            if (endOffset <= cursor) return;
+            cursor = Math.min(endOffset, base + size);
+
+            if (cursor == base + size) {
+                // Todo entregado: el archivo vuelve a quedar solo con la cabecera
+                reset();
+            } else {
+                writeHeader();
+            }
+        }
+
+        synchronized void sync() throws IOException {
+            if (!dirty || closed) return;
+            channel.force(false);
+            dirty = false;
+        }
+
+        // Lo escrito queda en disco antes de soltar el archivo
+        synchronized void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            try {
+                if (dirty) channel.force(false);
+            } finally {
+                channel.close();
+            }
+        }
+
+        synchronized boolean isClosed() {
+            return closed;
+        }
+
+        private long position(long offset) {
+            return offset - base;
+        }
+
+        // Vacía el archivo sin mover el cursor: la base avanza lo que se descarta
+        private void reset() throws IOException {
+            channel.truncate(HEADER_SIZE);
+            base = cursor - HEADER_SIZE;
+            size = HEADER_SIZE;
+            writeHeader();
+        }
+
+        private void writeHeader() throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                    .putInt(MAGIC).putInt(VERSION).putLong(base).putLong(cursor);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            dirty = true;
+        }
+
+        // Descarta una cola incompleta si el servidor se cayó a mitad de escritura
+        private long validEnd() throws IOException {
+            long fileSize = channel.size();
+            long offset = position(cursor);
+            ByteBuffer header = ByteBuffer.allocate(4);
+            while (offset + 4 <= fileSize) {
+                header.clear();
+                channel.read(header, offset);
+                header.flip();
+                int bodyLength = header.getInt();
+                if (bodyLength <= 0 || offset + 4 + bodyLength > fileSize) break;
+                offset += 4 + bodyLength;
+            }
+            if (offset < fileSize) {
+                channel.truncate(offset);
+            }
+            return offset;
+        }
+
+        // Un buzón del formato anterior se reescribe con lo que tenía pendiente
+        // en un archivo nuevo que reemplaza al viejo de una vez
+        private static void upgrade(File file) throws IOException {
+            if (file.length() < OLD_HEADER_SIZE) return;
+
+            File tmp = new File(file.getPath() + ".tmp");
+            try (FileChannel old = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                ByteBuffer header = ByteBuffer.allocate(OLD_HEADER_SIZE);
+                old.read(header, 0);
+                header.flip();
+                // El cursor anterior es pequeño: sus 4 bytes altos nunca son el magic
+                if (header.getInt(0) == MAGIC) return;
+
+                long oldSize = old.size();
+                long oldCursor = Math.max(OLD_HEADER_SIZE, Math.min(header.getLong(0), oldSize));
+                ByteBuffer pending = ByteBuffer.allocate((int) (oldSize - oldCursor));
+                while (pending.hasRemaining()) {
+                    if (old.read(pending, oldCursor + pending.position()) < 0) break;
+                }
+                pending.flip();
+
+                try (FileChannel upgraded = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    ByteBuffer newHeader = ByteBuffer.allocate(HEADER_SIZE)
+                            .putInt(MAGIC).putInt(VERSION).putLong(0).putLong(HEADER_SIZE);
+                    newHeader.flip();
+                    while (newHeader.hasRemaining()) upgraded.write(newHeader);
+                    while (pending.hasRemaining()) upgraded.write(pending);
+                    upgraded.force(true);
+                }
+            }
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            Log.info(" Buzón {} convertido al formato con offsets monótonos", file.getName());
+        }
+    }
+}
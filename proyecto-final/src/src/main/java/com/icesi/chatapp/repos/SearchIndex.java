@@ -0,0 +1,269 @@
+package com.icesi.chatapp.repos;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Índice invertido incremental sobre el historial. Cada mensaje es un documento
+// con id creciente (orden de escritura), así que el id más alto es el más
+// reciente. Las listas de postings guardan las diferencias entre ids como
+// varints en un byte[] que crece, unos pocos bytes por aparición.
+public class SearchIndex {
+    private static final int MAX_TERM_LENGTH = 40;
+
+    private final Map<String, PostingList> postings = new HashMap<>();
+    private final Map<String, Integer> conversationIds = new HashMap<>();
+    private final List<String> conversationKeys = new ArrayList<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Tabla de documentos: conversación y ubicación del registro en el log
+    private int[] conversations = new int[1024];
+    private long[] positions = new long[1024];
+    private int[] lengths = new int[1024];
+    private long[] timestamps = new long[1024];
+    private int documents;
+    // Falso si se indexó algo más antiguo que lo anterior (p. ej. una migración)
+    private boolean chronological = true;
+
+    public void add(String conversationKey, long position, int length, long timestamp, String text) {
+        Set<String> terms = tokenize(text);
+
+        lock.writeLock().lock();
+        try {
+            if (documents == positions.length) {
+                conversations = Arrays.copyOf(conversations, documents * 2);
+                positions = Arrays.copyOf(positions, documents * 2);
+                lengths = Arrays.copyOf(lengths, documents * 2);
+                timestamps = Arrays.copyOf(timestamps, documents * 2);
+            }
+            if (documents > 0 && timestamp < timestamps[documents - 1]) {
+                chronological = false;
+            }
+            int doc = documents++;
+            conversations[doc] = conversationId(conversationKey);
+            positions[doc] = position;
+            lengths[doc] = length;
+            timestamps[doc] = timestamp;
+
+            for (String term : terms) {
+                postings.computeIfAbsent(term, t -> new PostingList()).add(doc);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Documentos que contienen todos los términos de la consulta, del más reciente
+    // al más antiguo, solo de las conversaciones que acepta 'allowed'
+    public List<Hit> search(String query, int limit, ConversationFilter allowed) {
+        Set<String> terms = tokenize(query);
+        if (terms.isEmpty() || limit <= 0) return Collections.emptyList();
+
+        lock.readLock().lock();
+        try {
+            List<PostingList> lists = new ArrayList<>(terms.size());
+            for (String term : terms) {
+                PostingList list = postings.get(term);
+                if (list == null) return Collections.emptyList();
+                lists.add(list);
+            }
+            // Se empieza por la lista más corta para que la intersección se reduzca rápido
+            lists.sort((a, b) -> Integer.compare(a.count, b.count));
+
+            int[] matches = lists.get(0).decode();
+            for (int i = 1; i < lists.size() && matches.length > 0; i++) {
+                matches = intersect(matches, lists.get(i).decode());
+            }
+
+            if (!chronological) {
+                matches = byTimestamp(matches);
+            }
+
+            Map<Integer, Boolean> decided = new HashMap<>();
+            List<Hit> hits = new ArrayList<>(Math.min(limit, matches.length));
+            for (int i = matches.length - 1; i >= 0 && hits.size() < limit; i--) {
+                int doc = matches[i];
+                int conversation = conversations[doc];
+                boolean ok = decided.computeIfAbsent(conversation,
+                        c -> allowed.test(conversationKeys.get(c)));
+                if (ok) {
+                    hits.add(new Hit(positions[doc], lengths[doc]));
+                }
+            }
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Minúsculas, sin tildes y separando por todo lo que no sea letra o dígito
+    public static Set<String> tokenize(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        if (text == null || text.isEmpty()) return terms;
+
+        String normalized = text.toLowerCase(Locale.ROOT);
+        if (!isAscii(normalized)) {
+            normalized = Normalizer.normalize(normalized, Normalizer.Form.NFD)
+                    .replaceAll("\\p{M}+", "");
+        }
+
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean word = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                if (i - start <= MAX_TERM_LENGTH) {
+                    terms.add(normalized.substring(start, i));
+                }
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    public int getDocuments() {
+        lock.readLock().lock();
+        try {
+            return documents;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getTerms() {
+        lock.readLock().lock();
+        try {
+            return postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getPostingBytes() {
+        lock.readLock().lock();
+        try {
+            long total = 0;
+            for (PostingList list : postings.values()) {
+                total += list.size;
+            }
+            return total;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int conversationId(String key) {
+        Integer id = conversationIds.get(key);
+        if (id == null) {
+            id = conversationKeys.size();
+            conversationKeys.add(key);
+            conversationIds.put(key, id);
+        }
+        return id;
+    }
+
+    // Orden ascendente por timestamp (desempate por id) para recorrerlo igual que el caso normal
+    private int[] byTimestamp(int[] docs) {
+        Integer[] boxed = new Integer[docs.length];
+        for (int i = 0; i < docs.length; i++) boxed[i] = docs[i];
+        Arrays.sort(boxed, (a, b) -> timestamps[a] != timestamps[b]
+                ? Long.compare(timestamps[a], timestamps[b]) : Integer.compare(a, b));
+        int[] sorted = new int[docs.length];
+        for (int i = 0; i < docs.length; i++) sorted[i] = boxed[i];
+        return sorted;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] out = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                out[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private static boolean isAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) return false;
+        }
+        return true;
+    }
+
+    @FunctionalInterface
+    public interface ConversationFilter {
+        boolean test(String conversationKey);
+    }
+
+    // Ubicación de un mensaje encontrado dentro del log
+    public static class Hit {
+        private final long position;
+        private final int length;
+
+        Hit(long position, int length) {
+            this.position = position;
+            this.length = length;
+        }
+
+        public long getPosition() { return position; }
+        public int getLength() { return length; }
+    }
+
+    // Ids crecientes codificados como diferencias en varint (7 bits por byte)
+    private static class PostingList {
+        private byte[] data = new byte[4];
+        private int size;
+        private int count;
+        private int lastDoc;
+
+        void add(int doc) {
+            int delta = doc - lastDoc;
+            if (size + 5 > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length + (data.length >> 1), size + 5));
+            }
+            while ((delta & ~0x7F) != 0) {
+                data[size++] = (byte) ((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+            data[size++] = (byte) delta;
+            lastDoc = doc;
+            count++;
+        }
+
+        int[] decode() {
+            int[] docs = new int[count];
+            int doc = 0;
+            int pos = 0;
+            for (int i = 0; i < count; i++) {
+                int delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[pos++];
+                    delta |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+                doc += delta;
+                docs[i] = doc;
+            }
+            return docs;
+        }
+    }
+}
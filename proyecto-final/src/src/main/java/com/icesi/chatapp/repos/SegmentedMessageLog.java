@@ -0,0 +1,634 @@
+package com.icesi.chatapp.repos;
+
+import com.icesi.chatapp.metrics.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Historial en un único log append-only dividido en segmentos.
+// Un hilo escritor agrupa los mensajes pendientes (group commit) y los escribe
+// sobre un FileChannel que permanece abierto; cada mensaje privado se escribe
+// una sola vez y queda indexado para la conversación de ambos participantes.
+public class SegmentedMessageLog implements IMessageRepo, AutoCloseable {
+    private static final String LOG_DIR = "chat_history/log";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String LOCK_FILE = "log.lock";
+    private static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+    private static final long MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
+    private static final int MAX_BATCH = 256;
+    private static final byte KIND_PRIVATE = 1;
+    private static final byte KIND_GROUP = 2;
+    private static final byte KIND_MASK = 0x0F;
+    // El nibble alto del byte de tipo es la versión del formato del registro.
+    // Un cambio de formato usa la versión siguiente; nunca se reinterpreta una anterior
+    private static final int FORMAT_SHIFT = 4;
+    private static final int FORMAT_TEXT = 0;        // la entrada es la línea de texto
+    private static final int FORMAT_STRUCTURED = 1;  // contenido y audio por separado
+    private static final int CURRENT_FORMAT = FORMAT_STRUCTURED;
+    // Emisor, destino y audio llevan la longitud en un short sin signo
+    static final int MAX_STRING_BYTES = 0xFFFF;
+
+    public enum FsyncPolicy {
+        NEVER,        // se deja al sistema operativo
+        EVERY_BATCH,  // force() después de cada lote
+        INTERVAL      // force() como máximo cada fsyncIntervalMillis
+    }
+
+    private final File directory;
+    private final long segmentSize;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalMillis;
+
+    private final Map<String, ConversationIndex> indexes = new ConcurrentHashMap<>();
+    private final SearchIndex searchIndex = new SearchIndex();
+    private final Map<Integer, FileChannel> segments = new ConcurrentHashMap<>();
+    private final BlockingQueue<PendingAppend> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    // Un solo proceso escribe el log: el servidor o la migración, no ambos
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+
+    // Solo los usa el hilo escritor
+    private int activeSegment;
+    private FileChannel activeChannel;
+    private long activeSize;
+    private long lastSync = System.currentTimeMillis();
+    private boolean dirty;
+    private ByteBuffer batchBuffer = ByteBuffer.allocate(64 * 1024);
+
+    private volatile boolean running = true;
+
+    public SegmentedMessageLog() throws IOException {
+        this(new File(LOG_DIR), DEFAULT_SEGMENT_SIZE, FsyncPolicy.INTERVAL, 1000);
+    }
+
+    public SegmentedMessageLog(File directory, long segmentSize, FsyncPolicy fsyncPolicy,
+                               long fsyncIntervalMillis) throws IOException {
+        if (segmentSize <= 0 || segmentSize > MAX_SEGMENT_SIZE) {
+            throw new IllegalArgumentException("Tamaño de segmento inválido: " + segmentSize);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+
+        directory.mkdirs();
+        lockChannel = FileChannel.open(new File(directory, LOCK_FILE).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        lock = tryLock(lockChannel);
+        if (lock == null) {
+            lockChannel.close();
+            throw new IOException("El log de mensajes en " + directory + " ya está abierto por otro proceso");
+        }
+        recover();
+
+        writer = new Thread(this::writerLoop, "message-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // ==================== ESCRITURA ====================
+
+    @Override
+    public void savePrivateMessage(String sender, String receiver, String message) {
+        append(MessageRecord.text(System.currentTimeMillis(), sender, receiver, MessageRecord.Type.PRIVATE, message));
+    }
+
+    @Override
+    public void saveGroupMessage(String sender, String groupName, String message) {
+        append(MessageRecord.text(System.currentTimeMillis(), sender, groupName, MessageRecord.Type.GROUP, message));
+    }
+
+    @Override
+    public void saveAudioMessage(String from, String to, String audioId) {
+        append(MessageRecord.audio(System.currentTimeMillis(), from, to, MessageRecord.Type.PRIVATE, audioId));
+    }
+
+    @Override
+    public void saveGroupAudioMessage(String from, String groupName, String audioId) {
+        append(MessageRecord.audio(System.currentTimeMillis(), from, groupName, MessageRecord.Type.GROUP, audioId));
+    }
+
+    public void append(MessageRecord record) {
+        await(appendAsync(record));
+    }
+
+    @Override
+    public CompletableFuture<Long> saveAsync(MessageRecord record) {
+        return appendAsync(record);
+    }
+
+    // Sin esperar al lote; lo usan el servicio y la migración del historial de texto.
+    // El futuro trae la secuencia del registro: su posición en el log + 1.
+    // Un emisor, destino o audio de más de 64 KB lanza IllegalArgumentException
+    public CompletableFuture<Long> appendAsync(MessageRecord record) {
+        PendingAppend pending = new PendingAppend(record);
+        if (!running) {
+            pending.future.completeExceptionally(new IOException("El log de mensajes está cerrado"));
+            return pending.future;
+        }
+        queue.add(pending);
+        return pending.future;
+    }
+
+    // El llamador espera a que su lote quede escrito para que una lectura
+    // posterior del historial ya vea el mensaje
+    private void await(CompletableFuture<Long> future) {
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            Log.error("Error al guardar en historial: {}", e.getCause().getMessage());
+        }
+    }
+
+    // ==================== LECTURA ====================
+
+    @Override
+    public List<MessageRecord> getPrivateHistory(String user1, String user2) {
+        return readConversation(privateKey(user1, user2));
+    }
+
+    @Override
+    public List<MessageRecord> getGroupHistory(String groupName) {
+        return readConversation(groupKey(groupName));
+    }
+
+    @Override
+    public List<MessageRecord> getPrivateHistoryPage(String user1, String user2, long beforeTimestamp, long beforeSeq,
+                                                     int limit) {
+        return readPage(privateKey(user1, user2), beforeTimestamp, beforeSeq, limit);
+    }
+
+    @Override
+    public List<MessageRecord> getGroupHistoryPage(String groupName, long beforeTimestamp, long beforeSeq, int limit) {
+        return readPage(groupKey(groupName), beforeTimestamp, beforeSeq, limit);
+    }
+
+    // Si la conversación del registro ya tiene mensajes en el log
+    public boolean hasConversation(MessageRecord record) {
+        ConversationIndex index = indexes.get(keyOf(record));
+        return index != null && index.size() > 0;
+    }
+
+    // Solo conversaciones propias: privados en los que participa y sus grupos
+    @Override
+    public List<MessageRecord> searchMessages(String user, Set<String> groups, String query, int limit) {
+        List<SearchIndex.Hit> hits = searchIndex.search(query, limit, key -> canRead(key, user, groups));
+        List<MessageRecord> results = new ArrayList<>(hits.size());
+        try {
+            for (SearchIndex.Hit hit : hits) {
+                results.add(decodeRecord(readRecord(hit.getPosition(), hit.getLength())).withSeq(seqOf(hit.getPosition())));
+            }
+        } catch (IOException e) {
+            Log.error("Error al leer resultados de búsqueda: {}", e.getMessage());
+        }
+        return results;
+    }
+
+    public SearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    private static boolean canRead(String key, String user, Set<String> groups) {
+        if (key.startsWith("group\u0000")) {
+            return groups.contains(key.substring("group\u0000".length()));
+        }
+        String[] parts = key.split("\u0000", 3);
+        return parts.length == 3 && (parts[1].equals(user) || parts[2].equals(user));
+    }
+
+    private List<MessageRecord> readConversation(String key) {
+        ConversationIndex index = indexes.get(key);
+        if (index == null) return new ArrayList<>();
+        return readSnapshot(index.snapshot());
+    }
+
+    // Solo se leen los registros de la página, posicionándose con el índice
+    private List<MessageRecord> readPage(String key, long beforeTimestamp, long beforeSeq, int limit) {
+        ConversationIndex index = indexes.get(key);
+        if (index == null || limit <= 0) return new ArrayList<>();
+        return readSnapshot(beforeSeq > 0
+                ? index.pageBefore(beforeSeq - 1, limit)
+                : index.page(beforeTimestamp, limit));
+    }
+
+    private List<MessageRecord> readSnapshot(ConversationIndex.Snapshot snapshot) {
+        List<MessageRecord> history = new ArrayList<>(snapshot.size());
+        try {
+            for (int i = 0; i < snapshot.size(); i++) {
+                long position = snapshot.getPosition(i);
+                ByteBuffer record = readRecord(position, snapshot.getLength(i));
+                history.add(decodeRecord(record).withSeq(seqOf(position)));
+            }
+        } catch (IOException e) {
+            Log.error("Error al leer historial: {}", e.getMessage());
+        }
+        return history;
+    }
+
+    private ByteBuffer readRecord(long position, int length) throws IOException {
+        FileChannel channel = segments.get(segmentOf(position));
+        if (channel == null) throw new IOException("Segmento inexistente: " + segmentOf(position));
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        long offset = offsetOf(position);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, offset + buffer.position());
+            if (read < 0) throw new IOException("Registro truncado en " + offset);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    // ==================== HILO ESCRITOR (GROUP COMMIT) ====================
+
+    private void writerLoop() {
+        List<PendingAppend> batch = new ArrayList<>(MAX_BATCH);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingAppend first = queue.poll(fsyncWaitMillis(), TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, MAX_BATCH - 1);
+                    writeBatch(batch);
+                    batch.clear();
+                }
+                syncIfDue();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    private long fsyncWaitMillis() {
+        return fsyncPolicy == FsyncPolicy.INTERVAL ? Math.max(1, fsyncIntervalMillis) : 100;
+    }
+
+    private void writeBatch(List<PendingAppend> batch) {
+        try {
+            int total = 0;
+            for (PendingAppend pending : batch) {
+                total += pending.record.length;
+            }
+            if (activeSize > 0 && activeSize + total > segmentSize) {
+                rollSegment();
+            }
+            if (batchBuffer.capacity() < total) {
+                batchBuffer = ByteBuffer.allocate(Math.max(total, batchBuffer.capacity() * 2));
+            }
+
+            batchBuffer.clear();
+            long[] positions = new long[batch.size()];
+            for (int i = 0; i < batch.size(); i++) {
+                positions[i] = position(activeSegment, activeSize + batchBuffer.position());
+                batchBuffer.put(batch.get(i).record);
+            }
+            batchBuffer.flip();
+            while (batchBuffer.hasRemaining()) {
+                activeChannel.write(batchBuffer, activeSize + batchBuffer.position());
+            }
+            activeSize += total;
+            dirty = true;
+
+            if (fsyncPolicy == FsyncPolicy.EVERY_BATCH) {
+                sync();
+            }
+
+            // Se indexa después de escribir para no exponer registros incompletos
+            for (int i = 0; i < batch.size(); i++) {
+                PendingAppend pending = batch.get(i);
+                MessageRecord record = pending.message;
+                indexRecord(record, positions[i], pending.record.length);
+                pending.future.complete(seqOf(positions[i]));
+            }
+        } catch (IOException | RuntimeException e) {
+            // Un error inesperado falla el lote pero no termina el hilo escritor;
+            // los futuros ya completados no cambian
+            for (PendingAppend pending : batch) {
+                pending.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void syncIfDue() {
+        if (fsyncPolicy == FsyncPolicy.INTERVAL && dirty
+                && System.currentTimeMillis() - lastSync >= fsyncIntervalMillis) {
+            try {
+                sync();
+            } catch (IOException e) {
+                Log.error("Error sincronizando log de mensajes: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void sync() throws IOException {
+        activeChannel.force(false);
+        dirty = false;
+        lastSync = System.currentTimeMillis();
+    }
+
+    private void rollSegment() throws IOException {
+        // El segmento anterior queda abierto solo para lecturas
+        if (fsyncPolicy != FsyncPolicy.NEVER) {
+            sync();
+        }
+        openSegment(activeSegment + 1);
+    }
+
+    private void openSegment(int number) throws IOException {
+        FileChannel channel = FileChannel.open(segmentFile(number).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segments.put(number, channel);
+        activeSegment = number;
+        activeChannel = channel;
+        activeSize = channel.size();
+    }
+
+    // ==================== RECUPERACIÓN ====================
+
+    private void recover() throws IOException {
+        File[] files = directory.listFiles((dir, name) ->
+                name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        List<Integer> numbers = new ArrayList<>();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                numbers.add(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+                        name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+        Collections.sort(numbers);
+
+        if (numbers.isEmpty()) {
+            openSegment(0);
+            return;
+        }
+
+        for (int number : numbers) {
+            openSegment(number);
+            long validEnd = scanSegment(number, activeChannel);
+            if (validEnd < activeSize) {
+                // Cola incompleta de una escritura interrumpida
+                Log.warn("Truncando segmento {} en {}", number, validEnd);
+                activeChannel.truncate(validEnd);
+                activeSize = validEnd;
+            }
+        }
+    }
+
+    private long scanSegment(int number, FileChannel channel) throws IOException {
+        long size = channel.size();
+        long offset = 0;
+        ByteBuffer header = ByteBuffer.allocate(4);
+
+        while (offset + 4 <= size) {
+            header.clear();
+            channel.read(header, offset);
+            header.flip();
+            int bodyLength = header.getInt();
+            int length = 4 + bodyLength;
+            if (bodyLength <= 0 || offset + length > size) break;
+
+            // Se decodifica completo para reconstruir también el índice de búsqueda
+            MessageRecord record = decodeRecord(readRecord(position(number, offset), length));
+            indexRecord(record, position(number, offset), length);
+            offset += length;
+        }
+        return offset;
+    }
+
+    // ==================== FORMATO DE REGISTRO ====================
+    // [int longitud][byte versión|tipo][long epoch ms][emisor][destino][contenido][audio],
+    // cadenas como [short longitud][UTF-8], el contenido como [int longitud][UTF-8]
+    // y el audio vacío si el mensaje es de texto. Se decodifica en una sola pasada.
+    // OfflineInbox guarda sus mensajes con este mismo formato.
+    //
+    // Los registros de texto (versión 0) se escribieron en dos variantes sin
+    // distinguirlas en el byte de tipo: sin timestamp y, después, con él. Solo
+    // una de las dos cuadra exactamente con la longitud del registro.
+
+    // IllegalArgumentException si el mensaje no cabe en el formato; se comprueba
+    // antes de entregarlo para no enviar algo que luego no se puede guardar
+    public static void checkRecord(MessageRecord message) {
+        shortString(message.getSender(), "emisor");
+        shortString(message.getTarget(), "destino");
+        if (message.isAudio()) shortString(message.getAudioRef(), "audio");
+    }
+
+    static byte[] encodeRecord(MessageRecord message) {
+        byte[] senderBytes = shortString(message.getSender(), "emisor");
+        byte[] targetBytes = shortString(message.getTarget(), "destino");
+        byte[] contentBytes = message.getContent().getBytes(StandardCharsets.UTF_8);
+        byte[] audioBytes = message.isAudio() ? shortString(message.getAudioRef(), "audio") : new byte[0];
+        int bodyLength = 1 + 8 + 2 + senderBytes.length + 2 + targetBytes.length
+                + 4 + contentBytes.length + 2 + audioBytes.length;
+
+        ByteBuffer buffer = ByteBuffer.allocate(4 + bodyLength);
+        buffer.putInt(bodyLength);
+        buffer.put((byte) (kindOf(message.getType()) | CURRENT_FORMAT << FORMAT_SHIFT));
+        buffer.putLong(message.getTimestamp());
+        buffer.putShort((short) senderBytes.length).put(senderBytes);
+        buffer.putShort((short) targetBytes.length).put(targetBytes);
+        buffer.putInt(contentBytes.length).put(contentBytes);
+        buffer.putShort((short) audioBytes.length).put(audioBytes);
+        return buffer.array();
+    }
+
+    // Una longitud mayor se cortaría en el short y corrompería el registro
+    private static byte[] shortString(String value, String field) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_BYTES) {
+            throw new IllegalArgumentException("Campo " + field + " demasiado largo: " + bytes.length + " bytes");
+        }
+        return bytes;
+    }
+
+    static MessageRecord decodeRecord(ByteBuffer record) {
+        int bodyLength = record.getInt();
+        int body = record.position();
+        byte flags = record.get();
+        int format = (flags & 0xFF) >>> FORMAT_SHIFT;
+        MessageRecord.Type type = (flags & KIND_MASK) == KIND_PRIVATE
+                ? MessageRecord.Type.PRIVATE : MessageRecord.Type.GROUP;
+
+        switch (format) {
+            case FORMAT_STRUCTURED -> {
+                long timestamp = record.getLong();
+                String sender = readString(record);
+                String target = readString(record);
+                String content = readText(record);
+                String audioRef = readString(record);
+                return new MessageRecord(timestamp, sender, target, type, content,
+                        audioRef.isEmpty() ? null : audioRef);
+            }
+            case FORMAT_TEXT -> {
+                // 1 + 8 del tipo y el timestamp cuando lo lleva
+                boolean timestamped = textRecordLength(record, body, body + 1 + 8) == bodyLength;
+                record.position(body + 1);
+                long timestamp = timestamped ? record.getLong() : 0;
+                String sender = readString(record);
+                String target = readString(record);
+                return decodeTextEntry(timestamp, sender, target, type, readText(record));
+            }
+            default -> throw new IllegalStateException("Registro con formato desconocido: " + format);
+        }
+    }
+
+    // Longitud del cuerpo si [emisor][destino][entrada] empieza en from, o -1
+    private static long textRecordLength(ByteBuffer record, int body, int from) {
+        long position = from;
+        for (int i = 0; i < 2; i++) {
+            if (position + 2 > record.limit()) return -1;
+            position += 2 + Short.toUnsignedInt(record.getShort((int) position));
+        }
+        if (position + 4 > record.limit()) return -1;
+        position += 4 + Integer.toUnsignedLong(record.getInt((int) position));
+        return position - body;
+    }
+
+    // Registros de versión 0: la entrada es la línea de texto, con su propia hora
+    private static MessageRecord decodeTextEntry(long timestamp, String sender, String target,
+                                                 MessageRecord.Type type, String entry) {
+        MessageRecord parsed = type == MessageRecord.Type.PRIVATE
+                ? LegacyHistoryFormat.parsePrivate(entry, sender, target)
+                : LegacyHistoryFormat.parseGroup(entry, target);
+        if (parsed == null) {
+            return MessageRecord.text(timestamp, sender, target, type, entry);
+        }
+        return new MessageRecord(timestamp != 0 ? timestamp : parsed.getTimestamp(),
+                sender, target, type, parsed.getContent(), parsed.getAudioRef());
+    }
+
+    private static byte kindOf(MessageRecord.Type type) {
+        return type == MessageRecord.Type.PRIVATE ? KIND_PRIVATE : KIND_GROUP;
+    }
+
+    private static String readText(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = Short.toUnsignedInt(buffer.getShort());
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private void indexRecord(MessageRecord record, long position, int length) {
+        String key = keyOf(record);
+        indexes.computeIfAbsent(key, k -> new ConversationIndex()).add(position, length, record.getTimestamp());
+        if (!record.isAudio()) {
+            searchIndex.add(key, position, length, record.getTimestamp(), record.getContent());
+        }
+    }
+
+    private static String keyOf(MessageRecord record) {
+        return record.getType() == MessageRecord.Type.PRIVATE
+                ? privateKey(record.getSender(), record.getTarget())
+                : groupKey(record.getTarget());
+    }
+
+    // Una sola clave para ambos participantes de una conversación privada
+    private static String privateKey(String user1, String user2) {
+        return user1.compareTo(user2) <= 0
+                ? "private\u0000" + user1 + "\u0000" + user2
+                : "private\u0000" + user2 + "\u0000" + user1;
+    }
+
+    private static String groupKey(String groupName) {
+        return "group\u0000" + groupName;
+    }
+
+    private static long position(int segment, long offset) {
+        return ((long) segment << 32) | offset;
+    }
+
+    // 0 queda libre para "sin secuencia"
+    private static long seqOf(long position) {
+        return position + 1;
+    }
+
+    private static int segmentOf(long position) {
+        return (int) (position >>> 32);
+    }
+
+    private static long offsetOf(long position) {
+        return position & 0xFFFFFFFFL;
+    }
+
+    private File segmentFile(int number) {
+        return new File(directory, String.format("%s%08d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    // ==================== CIERRE ====================
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Lo que haya llegado mientras el escritor terminaba ya no se escribe
+        PendingAppend pending;
+        while ((pending = queue.poll()) != null) {
+            pending.future.completeExceptionally(new IOException("El log de mensajes está cerrado"));
+        }
+
+        try {
+            if (dirty && fsyncPolicy != FsyncPolicy.NEVER) {
+                sync();
+            }
+        } catch (IOException e) {
+            Log.error("Error sincronizando log de mensajes: {}", e.getMessage());
+        }
+        for (FileChannel channel : segments.values()) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Ignorar
+            }
+        }
+        try {
+            lock.release();
+            lockChannel.close();
+        } catch (IOException e) {
+            // Ignorar
+        }
+    }
+
+    // null si otro proceso (o este mismo) ya tiene el log abierto
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            return null;
+        }
+    }
+
+    private static class PendingAppend {
+        final MessageRecord message;
+        final byte[] record;
+        final CompletableFuture<Long> future = new CompletableFuture<>();
+
+        PendingAppend(MessageRecord message) {
+            this.message = message;
+            this.record = encodeRecord(message);
+        }
+    }
+}
@@ -2,363 +2,850 @@ package com.icesi.chatapp.services;
 
 import Chat.*;
 import com.zeroc.Ice.Current;
+import com.icesi.chatapp.cluster.ClusterRouter;
+import com.icesi.chatapp.repos.AudioStore;
+import com.icesi.chatapp.repos.GroupJournal;
 import com.icesi.chatapp.repos.IMessageRepo;
+import com.icesi.chatapp.repos.MessageRecord;
+import com.icesi.chatapp.repos.OfflineInbox;
+import com.icesi.chatapp.repos.SegmentedMessageLog;
+import com.icesi.chatapp.managers.GroupCallRegistry;
+import com.icesi.chatapp.managers.GroupManager;
+import com.icesi.chatapp.managers.MessageBatcher;
 import com.icesi.chatapp.managers.UserManager;
-
+import com.icesi.chatapp.metrics.Counter;
+import com.icesi.chatapp.metrics.Histogram;
+import com.icesi.chatapp.metrics.Log;
+import com.icesi.chatapp.metrics.Metrics;
+import com.icesi.chatapp.model.UserSession;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
 
 public class ChatServiceImpl implements ChatService {
 
+    private static final int MAX_HISTORY_PAGE = 200;
+    private static final int MAX_SEARCH_RESULTS = 100;
+    private static final int INBOX_BATCH = 200;
+    private static final int IO_THREADS = 4;
+
     private final IMessageRepo messageRepo;
+    private final AudioStore audioStore;
     private final UserManager userManager;
-    private final Map<String, Set<String>> groups = new ConcurrentHashMap<>();
-    private final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private final GroupManager groupManager;
+    private final GroupCallRegistry groupCalls;
+    private final HistoryCache historyCache = new HistoryCache();
+    private final OfflineInbox offlineInbox;
+    private final MessageBatcher messageBatcher;
+    // null si el servidor corre solo
+    private volatile ClusterRouter cluster;
+    // Lecturas de historial y escrituras de audio que no deben ocupar un hilo de Ice
+    private final ExecutorService ioExecutor = Executors.newFixedThreadPool(IO_THREADS, r -> {
+        Thread thread = new Thread(r, "chat-io");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static final Counter PRIVATE_MESSAGES = Metrics.counter("messages.private");
+    private static final Counter GROUP_MESSAGES = Metrics.counter("messages.group");
+    private static final Histogram FANOUT_RECIPIENTS = Metrics.histogram("fanout.recipients");
+    private static final Histogram FANOUT_TIME = Metrics.histogram("fanout.us");
+    private static final Histogram REPO_APPEND = Metrics.histogram("repo.append.us");
+    private static final Histogram REPO_READ = Metrics.histogram("repo.read.us");
 
     public ChatServiceImpl(IMessageRepo messageRepo) {
+        this(messageRepo, new GroupManager(), new OfflineInbox(), MessageBatcher.DEFAULT_WINDOW_MILLIS);
+    }
+
+    public ChatServiceImpl(IMessageRepo messageRepo, GroupManager groupManager, OfflineInbox offlineInbox,
+                           long deliveryWindowMillis) {
+        this(messageRepo, new AudioStore(), groupManager, offlineInbox, deliveryWindowMillis);
+    }
+
+    public ChatServiceImpl(IMessageRepo messageRepo, AudioStore audioStore, GroupManager groupManager,
+                           OfflineInbox offlineInbox, long deliveryWindowMillis) {
+        this(messageRepo, audioStore, groupManager, offlineInbox, new UserManager(), deliveryWindowMillis);
+    }
+
+    // El UserManager trae la configuración de las colas de salida (Chat.Outbound.*)
+    public ChatServiceImpl(IMessageRepo messageRepo, AudioStore audioStore, GroupManager groupManager,
+                           OfflineInbox offlineInbox, UserManager userManager, long deliveryWindowMillis) {
         this.messageRepo = messageRepo;
-        this.userManager = new UserManager();
+        this.audioStore = audioStore;
+        this.groupManager = groupManager;
+        this.groupCalls = new GroupCallRegistry(groupManager);
+        this.offlineInbox = offlineInbox;
+        this.userManager = userManager;
+        this.messageBatcher = new MessageBatcher(userManager, offlineInbox::append, deliveryWindowMillis);
+
+        // También cuando la cierra el WebSocket de audio
+        groupCalls.addEndListener((callId, groupName) -> notifyGroupMembers(groupName, null,
+                callback -> callback.onGroupCallEndedAsync(groupName)));
+    }
+
+    public HistoryCache getHistoryCache() {
+        return historyCache;
+    }
+
+    // El WebSocket de audio usa el mismo registro para invitar y autorizar
+    public GroupCallRegistry getGroupCalls() {
+        return groupCalls;
+    }
+
+    public void setCluster(ClusterRouter cluster) {
+        this.cluster = cluster;
+    }
+
+    // Estado interno que se lee al exportar las métricas
+    public void registerMetrics() {
+        Metrics.gauge("users.connected", userManager::getConnectedCount);
+        Metrics.gauge("delivery.delivered", () -> userManager.getCounters().getDelivered());
+        Metrics.gauge("delivery.failed", () -> userManager.getCounters().getFailed());
+        Metrics.gauge("delivery.dropped", () -> userManager.getCounters().getDropped());
+        Metrics.gauge("delivery.coalesced", () -> userManager.getCounters().getCoalesced());
+        Metrics.gauge("delivery.evicted", () -> userManager.getCounters().getEvicted());
+        Metrics.gauge("queue.depth", userManager::getQueuedTotal);
+        Metrics.gauge("queue.inflight", userManager::getInFlightTotal);
+        Metrics.gauge("queue.depth.max", userManager::getMaxDepthSeen);
+        Metrics.gauge("batcher.batches", messageBatcher::getBatches);
+        Metrics.gauge("batcher.messages", messageBatcher::getBatchedMessages);
+        Metrics.gauge("cache.hits", historyCache::getHits);
+        Metrics.gauge("cache.misses", historyCache::getMisses);
+        Metrics.gauge("cache.evictions", historyCache::getEvictions);
+        Metrics.gauge("cache.bytes", historyCache::getUsedBytes);
+        Metrics.gauge("inbox.stored", offlineInbox::getStored);
+        Metrics.gauge("inbox.dropped", offlineInbox::getDropped);
+        Metrics.gauge("inbox.open", offlineInbox::getOpenInboxes);
+    }
+
+    // Se llama después de cerrar el repositorio: termina lo que quedó encolado
+    public void close() {
+        ioExecutor.shutdown();
     }
 
     // ==================== USUARIOS ====================
 
     @Override
     public boolean registerUser(String username, ChatCallbackPrx callback, Current current) {
+        ClusterRouter cluster = this.cluster;
+        if (cluster != null && cluster.isOnlineElsewhere(username)) {
+            Log.info(" Usuario ya conectado en otro nodo: {}", username);
+            return false;
+        }
         if (!userManager.registerUser(username, callback.ice_fixed(current.con))) {
-            System.out.println(" Usuario ya existe: " + username);
+            Log.info(" Usuario ya existe: {}", username);
             return false;
         }
 
         if (current.con != null) {
-            current.con.setCloseCallback(connection -> handleUserDisconnect(username));
+            UserSession session = userManager.getSession(username);
+            current.con.setCloseCallback(connection -> handleUserDisconnect(username, session));
         }
 
-        System.out.println(" Usuario registrado: " + username);
+        Log.info(" Usuario registrado: {}", username);
         notifyUserJoined(username);
+        deliverInbox(username);
+        if (cluster != null) {
+            cluster.announceOnline(username);
+            // Lo que llegó mientras no estaba en ningún nodo quedó en su nodo de origen
+            String home = cluster.homeOf(username);
+            if (!cluster.isSelf(home)) {
+                deliverRemoteInbox(username, home);
+            }
+        }
         return true;
     }
 
     @Override
     public void unregisterUser(String username, Current current) {
-        handleUserDisconnect(username);
+        handleUserDisconnect(username, userManager.getSession(username));
     }
 
     @Override
     public String[] listUsers(Current current) {
-        return userManager.listUsers();
+        ClusterRouter cluster = this.cluster;
+        if (cluster == null) return userManager.listUsers();
+
+        Set<String> users = new TreeSet<>(Arrays.asList(userManager.listUsers()));
+        users.addAll(Arrays.asList(cluster.getDirectory().users()));
+        return users.toArray(new String[0]);
     }
 
     // ==================== MENSAJES PRIVADOS ====================
 
     @Override
-    public boolean sendPrivateMessage(String from, String to, String content, Current current) {
-        ChatCallbackPrx recipient = userManager.getUser(to);
+    public CompletionStage<Boolean> sendPrivateMessageAsync(String from, String to, String content, Current current) {
+        MessageRecord record = MessageRecord.text(System.currentTimeMillis(), from, to,
+                MessageRecord.Type.PRIVATE, content);
+        if (!storable(record)) return CompletableFuture.completedFuture(false);
 
-        if (recipient == null) return false;
+        // Si el destinatario no está conectado, el mensaje espera en su buzón
+        route(List.of(to), null, toMessage(record), record);
+        PRIVATE_MESSAGES.increment();
 
-        Message msg = createMessage(from, content, "private");
+        Log.debug("mensaje {} → {}: {}", from, to, content);
+        return persist(record);
+    }
 
-        try {
-            recipient.onMessageReceived(msg);
-            messageRepo.savePrivateMessage(from, to, content);
-            System.out.println("mensaje " + from + " → " + to + ": " + content);
-            return true;
-        } catch (Exception e) {
-            System.err.println(" Error enviando mensaje");
-            return false;
-        }
+    @Override
+    public CompletionStage<Message[]> getPrivateHistoryAsync(String user1, String user2, Current current) {
+        return historyCache.getAllAsync(HistoryCache.privateKey(user1, user2),
+                timedRead(() -> toMessages(messageRepo.getPrivateHistory(user1, user2))), ioExecutor);
     }
 
     @Override
-    public Message[] getPrivateHistory(String user1, String user2, Current current) {
-        List<String> historyLines = messageRepo.getPrivateHistory(user1, user2);
-        return parseHistoryLines(historyLines);
+    public CompletionStage<Message[]> getPrivateHistoryPageAsync(String user1, String user2, long beforeTimestamp,
+                                                                 long beforeSeq, int limit, Current current) {
+        int pageSize = Math.min(limit, MAX_HISTORY_PAGE);
+        return historyCache.getPageAsync(HistoryCache.privateKey(user1, user2), beforeTimestamp, beforeSeq, pageSize,
+                timedRead(() -> toMessages(messageRepo.getPrivateHistoryPage(user1, user2, beforeTimestamp,
+                        beforeSeq, pageSize))),
+                ioExecutor);
     }
 
     // ==================== GRUPOS ====================
 
     @Override
     public boolean createGroup(String groupName, String creator, Current current) {
-        if (groups.containsKey(groupName)) return false;
+        if (!groupManager.createGroup(groupName, creator)) return false;
 
-        Set<String> members = ConcurrentHashMap.newKeySet();
-        members.add(creator);
-        groups.put(groupName, members);
-
-        System.out.println(" Grupo creado: " + groupName);
+        Log.info(" Grupo creado: {}", groupName);
         notifyGroupCreated(groupName, creator);
+        ClusterRouter cluster = this.cluster;
+        if (cluster != null) cluster.groupChanged(GroupJournal.CREATE, groupName, creator);
         return true;
     }
 
     @Override
     public boolean addUserToGroup(String groupName, String username, Current current) {
-        Set<String> members = groups.get(groupName);
-        if (members == null) return false;
+        if (!groupManager.addMember(groupName, username)) return false;
 
-        members.add(username);
+        ClusterRouter cluster = this.cluster;
+        if (cluster != null) cluster.groupChanged(GroupJournal.ADD, groupName, username);
         return true;
     }
 
     @Override
-    public boolean sendGroupMessage(String from, String groupName, String content, Current current) {
-        Set<String> members = groups.get(groupName);
-        if (members == null) return false;
+    public CompletionStage<Boolean> sendGroupMessageAsync(String from, String groupName, String content,
+                                                          Current current) {
+        if (!groupManager.exists(groupName)) return CompletableFuture.completedFuture(false);
+
+        MessageRecord record = MessageRecord.text(System.currentTimeMillis(), from, groupName,
+                MessageRecord.Type.GROUP, content);
+        if (!storable(record)) return CompletableFuture.completedFuture(false);
+        Message msg = toMessage(record);
+        long start = System.nanoTime();
+        int recipients = 0;
+        Set<String> members = groupManager.getMembers(groupName);
+        if (members != null) {
+            recipients = route(members, from, msg, record);
+        }
+        recordFanout(recipients, start);
+        GROUP_MESSAGES.increment();
 
-        Message msg = createMessage(from, content, "group");
-        notifyGroupMembers(groupName, from, callback -> callback.onMessageReceived(msg));
+        Log.debug(" [{}] {}: {}", groupName, from, content);
+        return persist(record);
+    }
 
-        messageRepo.saveGroupMessage(from, groupName, content);
-        System.out.println(" [" + groupName + "] " + from + ": " + content);
-        return true;
+    @Override
+    public CompletionStage<Message[]> getGroupHistoryAsync(String groupName, Current current) {
+        return historyCache.getAllAsync(HistoryCache.groupKey(groupName),
+                timedRead(() -> toMessages(messageRepo.getGroupHistory(groupName))), ioExecutor);
     }
 
     @Override
-    public Message[] getGroupHistory(String groupName, Current current) {
-        List<String> historyLines = messageRepo.getGroupHistory(groupName);
-        Message[] messages = parseHistoryLines(historyLines);
-        for (Message msg : messages) {
-            msg.type = "group";
-        }
-        return messages;
+    public CompletionStage<Message[]> getGroupHistoryPageAsync(String groupName, long beforeTimestamp, long beforeSeq,
+                                                               int limit, Current current) {
+        int pageSize = Math.min(limit, MAX_HISTORY_PAGE);
+        return historyCache.getPageAsync(HistoryCache.groupKey(groupName), beforeTimestamp, beforeSeq, pageSize,
+                timedRead(() -> toMessages(messageRepo.getGroupHistoryPage(groupName, beforeTimestamp,
+                        beforeSeq, pageSize))),
+                ioExecutor);
     }
 
     @Override
     public String[] listMyGroups(String username, Current current) {
-        List<String> userGroups = new ArrayList<>();
+        return groupManager.listGroupsOf(username);
+    }
+
+    // ==================== BÚSQUEDA ====================
 
-        for (Map.Entry<String, Set<String>> entry : groups.entrySet()) {
-            if (entry.getValue().contains(username)) {
-                userGroups.add(entry.getKey());
+    @Override
+    public SearchResult[] searchMessages(String user, String query, int limit, Current current) {
+        Set<String> groups = new HashSet<>(Arrays.asList(groupManager.listGroupsOf(user)));
+        List<MessageRecord> records = messageRepo.searchMessages(user, groups, query,
+                Math.min(limit, MAX_SEARCH_RESULTS));
+
+        Message[] messages = toMessages(records);
+        SearchResult[] results = new SearchResult[messages.length];
+        for (int i = 0; i < results.length; i++) {
+            MessageRecord record = records.get(i);
+            String conversation;
+            if (record.getType() == MessageRecord.Type.GROUP) {
+                conversation = record.getTarget();
+            } else {
+                conversation = record.getSender().equals(user) ? record.getTarget() : record.getSender();
             }
+            results[i] = new SearchResult(messages[i], conversation);
         }
-
-        return userGroups.toArray(new String[0]);
+        return results;
     }
 
     // ==================== NOTAS DE VOZ ====================
 
+    // El blob se escribe fuera del hilo de Ice; entrega e historial siguen cuando ya tiene id
     @Override
-    public boolean sendAudioMessage(String from, String to, byte[] audioData, String audioId, Current current) {
-        ChatCallbackPrx recipient = userManager.getUser(to);
+    public CompletionStage<Boolean> sendAudioMessageAsync(String from, String to, byte[] audioData, String audioId,
+                                                          Current current) {
+        return CompletableFuture.supplyAsync(() -> storeAudio(audioData, audioId), ioExecutor)
+                .thenCompose(storedId -> {
+                    MessageRecord record = MessageRecord.audio(System.currentTimeMillis(), from, to,
+                            MessageRecord.Type.PRIVATE, storedId);
+                    if (!storable(record)) return CompletableFuture.completedFuture(false);
+                    deliverOrStore(to, callback -> callback.onAudioReceivedAsync(from, audioData, audioId), record);
+
+                    Log.debug(" Audio: {} → {}", from, to);
+                    return persist(record);
+                });
+    }
 
-        if (recipient == null) return false;
+    @Override
+    public CompletionStage<Boolean> sendGroupAudioMessageAsync(String from, String groupName, byte[] audioData,
+                                                               String audioId, Current current) {
+        if (!groupManager.exists(groupName)) return CompletableFuture.completedFuture(false);
+
+        return CompletableFuture.supplyAsync(() -> storeAudio(audioData, audioId), ioExecutor)
+                .thenCompose(storedId -> {
+                    MessageRecord record = MessageRecord.audio(System.currentTimeMillis(), from, groupName,
+                            MessageRecord.Type.GROUP, storedId);
+                    if (!storable(record)) return CompletableFuture.completedFuture(false);
+                    notifyGroupMembers(groupName, from,
+                            callback -> callback.onAudioReceivedAsync(from, audioData, audioId), record);
+                    return persist(record);
+                });
+    }
 
+    // ==================== NOTAS DE VOZ POR PARTES ====================
+
+    @Override
+    public String beginAudioUpload(String from, Current current) {
         try {
-            recipient.onAudioReceived(from, audioData, audioId);
-            messageRepo.saveAudioMessage(from, to, audioId);
-            System.out.println(" Audio: " + from + " → " + to);
-            return true;
-        } catch (Exception e) {
+            return audioStore.beginUpload(from);
+        } catch (IOException e) {
+            Log.error(" Error iniciando subida de audio: {}", e.getMessage());
+            return "";
+        }
+    }
+
+    @Override
+    public boolean appendAudioChunk(String audioId, long offset, byte[] chunk, Current current) {
+        try {
+            return audioStore.appendChunk(audioId, offset, chunk);
+        } catch (IOException e) {
+            Log.error(" Error guardando parte de audio: {}", e.getMessage());
             return false;
         }
     }
 
     @Override
-    public boolean sendGroupAudioMessage(String from, String groupName, byte[] audioData, String audioId, Current current) {
-        Set<String> members = groups.get(groupName);
+    public CompletionStage<Boolean> commitAudioUploadAsync(String from, String to, String audioId, Current current) {
+        return CompletableFuture.supplyAsync(() -> commitUpload(from, audioId), ioExecutor)
+                .thenCompose(size -> {
+                    if (size < 0) return CompletableFuture.completedFuture(false);
 
-        if (members == null) return false;
+                    // El destinatario solo recibe el aviso; el audio lo pide por rangos
+                    MessageRecord record = MessageRecord.audio(System.currentTimeMillis(), from, to,
+                            MessageRecord.Type.PRIVATE, audioId);
+                    if (!storable(record)) return CompletableFuture.completedFuture(false);
+                    deliverOrStore(to, callback -> callback.onAudioAvailableAsync(from, audioId, size), record);
+                    Log.debug(" Audio: {} → {} ({} bytes)", from, to, size);
+                    return persist(record);
+                });
+    }
 
-        notifyGroupMembers(groupName, from, callback -> callback.onAudioReceived(from, audioData, audioId));
-        messageRepo.saveGroupAudioMessage(from, groupName, audioId);
+    @Override
+    public CompletionStage<Boolean> commitGroupAudioUploadAsync(String from, String groupName, String audioId,
+                                                                Current current) {
+        if (!groupManager.exists(groupName)) return CompletableFuture.completedFuture(false);
 
-        return true;
+        return CompletableFuture.supplyAsync(() -> commitUpload(from, audioId), ioExecutor)
+                .thenCompose(size -> {
+                    if (size < 0) return CompletableFuture.completedFuture(false);
+
+                    MessageRecord record = MessageRecord.audio(System.currentTimeMillis(), from, groupName,
+                            MessageRecord.Type.GROUP, audioId);
+                    if (!storable(record)) return CompletableFuture.completedFuture(false);
+                    notifyGroupMembers(groupName, from,
+                            callback -> callback.onAudioAvailableAsync(from, audioId, size), record);
+                    return persist(record);
+                });
     }
 
-    // ==================== SEÑALIZACIÓN DE LLAMADAS (SIN AUDIO) ====================
+    @Override
+    public ByteBuffer fetchAudio(String audioId, long offset, int length, Current current) {
+        try {
+            return audioStore.readRange(audioId, offset, length);
+        } catch (IOException e) {
+            Log.error(" Error leyendo audio: {}", e.getMessage());
+            return ByteBuffer.allocate(0);
+        }
+    }
 
     @Override
-    public boolean initiateCall(String from, String to, String callId, Current current) {
-        ChatCallbackPrx recipient = userManager.getUser(to);
+    public CompletionStage<Boolean> forwardAudioAsync(String from, String to, String audioId, Current current) {
+        long size = audioSize(audioId);
+        if (size < 0) return CompletableFuture.completedFuture(false);
 
-        if (recipient == null) return false;
+        MessageRecord record = MessageRecord.audio(System.currentTimeMillis(), from, to,
+                MessageRecord.Type.PRIVATE, audioId);
+        if (!storable(record)) return CompletableFuture.completedFuture(false);
+        deliverOrStore(to, callback -> callback.onAudioAvailableAsync(from, audioId, size), record);
+        return persist(record);
+    }
 
+    @Override
+    public CompletionStage<Boolean> forwardGroupAudioAsync(String from, String groupName, String audioId,
+                                                           Current current) {
+        long size = audioSize(audioId);
+        if (size < 0 || !groupManager.exists(groupName)) return CompletableFuture.completedFuture(false);
+
+        MessageRecord record = MessageRecord.audio(System.currentTimeMillis(), from, groupName,
+                MessageRecord.Type.GROUP, audioId);
+        if (!storable(record)) return CompletableFuture.completedFuture(false);
+        notifyGroupMembers(groupName, from, callback -> callback.onAudioAvailableAsync(from, audioId, size), record);
+        return persist(record);
+    }
+
+    // Un mensaje que no cabe en el formato del log (p. ej. un nombre de más de
+    // 64 KB) se rechaza antes de entregarlo a nadie
+    private static boolean storable(MessageRecord record) {
         try {
-            recipient.onCallRequest(from, callId);
-            System.out.println(" Llamada iniciada: " + from + " → " + to);
+            SegmentedMessageLog.checkRecord(record);
             return true;
-        } catch (Exception e) {
+        } catch (IllegalArgumentException e) {
+            Log.warn("Mensaje rechazado: {}", e.getMessage());
             return false;
         }
     }
 
-    @Override
-    public boolean acceptCall(String from, String to, String callId, Current current) {
-        ChatCallbackPrx caller = userManager.getUser(to);
+    // Guarda en el historial y responde cuando el mensaje ya se puede leer. La
+    // caché se actualiza en el hilo que completa la escritura, en el mismo orden
+    // del log; solo la respuesta va al ejecutor de E/S para no frenar al escritor.
+    // Los envíos ya comprobaron el registro con storable(); un error al guardar
+    // se registra pero el mensaje ya se entregó, así que responde true
+    private CompletableFuture<Boolean> persist(MessageRecord record) {
+        long start = System.nanoTime();
+        CompletableFuture<Long> saved;
+        try {
+            saved = messageRepo.saveAsync(record);
+        } catch (IllegalArgumentException e) {
+            // Copias de otros nodos, que no pasan por storable()
+            Log.warn("Mensaje no guardado en historial: {}", e.getMessage());
+            return CompletableFuture.completedFuture(true);
+        }
+        return saved.handle((seq, error) -> {
+            REPO_APPEND.recordSince(start);
+            if (error != null) {
+                Throwable cause = error.getCause() != null ? error.getCause() : error;
+                Log.error("Error al guardar en historial: {}", cause.getMessage());
+            } else {
+                historyCache.append(cacheKey(record), toMessage(record.withSeq(seq)));
+            }
+            return true;
+        }).thenApplyAsync(stored -> stored, ioExecutor);
+    }
 
-        if (caller == null) return false;
+    // Lectura del repositorio medida en repo.read.us (solo llega aquí un fallo de caché)
+    private static Supplier<Message[]> timedRead(Supplier<Message[]> read) {
+        return () -> {
+            long start = System.nanoTime();
+            try {
+                return read.get();
+            } finally {
+                REPO_READ.recordSince(start);
+            }
+        };
+    }
 
+    private static String cacheKey(MessageRecord record) {
+        return record.getType() == MessageRecord.Type.GROUP
+                ? HistoryCache.groupKey(record.getTarget())
+                : HistoryCache.privateKey(record.getSender(), record.getTarget());
+    }
+
+    private long audioSize(String audioId) {
         try {
-            caller.onCallAccepted(from, callId);
-            System.out.println("Llamada aceptada: " + from + " ↔ " + to);
-            return true;
-        } catch (Exception e) {
-            return false;
+            return audioStore.size(audioId);
+        } catch (IOException e) {
+            return -1;
         }
     }
 
-    @Override
-    public boolean rejectCall(String from, String to, Current current) {
-        ChatCallbackPrx caller = userManager.getUser(to);
-
-        if (caller == null) return false;
+    // Notas de la API antigua: se guardan en el almacén y el historial apunta
+    // al id del servidor (el del cliente no sirve para descargarla)
+    private String storeAudio(byte[] audioData, String clientAudioId) {
+        try {
+            return audioStore.put(audioData);
+        } catch (IOException e) {
+            Log.error(" Error guardando audio: {}", e.getMessage());
+            return clientAudioId;
+        }
+    }
 
+    private long commitUpload(String from, String audioId) {
         try {
-            caller.onCallRejected(from);
-            System.out.println(" Llamada rechazada por: " + from);
-            return true;
-        } catch (Exception e) {
-            return false;
+            return audioStore.commitUpload(audioId, from);
+        } catch (IOException e) {
+            Log.error(" Error confirmando subida de audio: {}", e.getMessage());
+            return -1;
         }
     }
 
+    // ==================== SEÑALIZACIÓN DE LLAMADAS (SIN AUDIO) ====================
+
     @Override
-    public boolean endCall(String from, String to, Current current) {
-        ChatCallbackPrx otherUser = userManager.getUser(to);
+    public boolean initiateCall(String from, String to, String callId, Current current) {
+        if (!userManager.deliver(to, callback -> callback.onCallRequestAsync(from, callId))) return false;
 
-        if (otherUser == null) return false;
+        Log.info(" Llamada iniciada: {} → {}", from, to);
+        return true;
+    }
 
-        try {
-            otherUser.onCallEnded(from);
-            System.out.println(" Llamada finalizada: " + from + " → " + to);
-            return true;
-        } catch (Exception e) {
-            return false;
-        }
+    @Override
+    public boolean acceptCall(String from, String to, String callId, Current current) {
+        if (!userManager.deliver(to, callback -> callback.onCallAcceptedAsync(from, callId))) return false;
+
+        Log.info("Llamada aceptada: {} ↔ {}", from, to);
+        return true;
     }
 
-    // ==================== MÉTODOS NO USADOS (MANTENER POR COMPATIBILIDAD CON chat.ice) ====================
+    @Override
+    public boolean rejectCall(String from, String to, Current current) {
+        if (!userManager.deliver(to, callback -> callback.onCallRejectedAsync(from))) return false;
+
+        Log.info(" Llamada rechazada por: {}", from);
+        return true;
+    }
+
+    @Override
+    public boolean endCall(String from, String to, Current current) {
+        if (!userManager.deliver(to, callback -> callback.onCallEndedAsync(from))) return false;
+
+        Log.info(" Llamada finalizada: {} → {}", from, to);
+        return true;
+    }
+
+    // ==================== LLAMADAS GRUPALES ====================
+    // La señalización va por Ice y el audio por WebSocket; ambos comparten groupCalls
 
     @Override
     public boolean initiateGroupCall(String from, String groupName, String callId, Current current) {
-        System.out.println(" initiateGroupCall no implementado (usar WebSocket)");
-        return false;
+        if (!groupCalls.start(callId, groupName, from)) {
+            Log.info(" Llamada grupal rechazada: {} no es miembro de {}", from, groupName);
+            return false;
+        }
+
+        notifyGroupMembers(groupName, from, callback -> callback.onGroupCallRequestAsync(from, groupName, callId));
+        Log.info(" Llamada grupal iniciada: {} en {}", callId, groupName);
+        return true;
     }
 
     @Override
     public boolean joinGroupCall(String username, String groupName, String callId, Current current) {
-        System.out.println(" joinGroupCall no implementado (usar WebSocket)");
-        return false;
+        if (!groupCalls.join(callId, groupName, username)) return false;
+
+        userManager.deliver(username, callback -> callback.onGroupCallStartedAsync(groupName, callId));
+        Log.info(" Usuario unido a llamada grupal: {} -> {}", username, callId);
+        return true;
     }
 
     @Override
     public boolean leaveGroupCall(String username, String groupName, String callId, Current current) {
-        System.out.println(" leaveGroupCall no implementado (usar WebSocket)");
-        return false;
+        if (!groupName.equals(groupCalls.groupOf(callId)) || !groupCalls.isParticipant(callId, username)) {
+            return false;
+        }
+        groupCalls.leave(callId, username);
+        return true;
     }
 
     @Override
-    public boolean endGroupCall(String groupName, String callId, Current current) {
-        System.out.println("endGroupCall no implementado (usar WebSocket)");
-        return false;
+    public boolean endGroupCall(String username, String groupName, String callId, Current current) {
+        if (!groupName.equals(groupCalls.groupOf(callId)) || !groupCalls.isParticipant(callId, username)) {
+            return false;
+        }
+        return groupCalls.end(callId);
     }
 
+    // ==================== MÉTODOS NO USADOS (MANTENER POR COMPATIBILIDAD CON chat.ice) ====================
+
     @Override
     public boolean streamCallAudio(String from, String to, byte[] audioChunk, Current current) {
-        System.out.println(" streamCallAudio no implementado (usar WebSocket)");
+        Log.warn(" streamCallAudio no implementado (usar WebSocket)");
         return false;
     }
 
     @Override
     public boolean streamGroupCallAudio(String from, String groupName, byte[] audioChunk, Current current) {
-        System.out.println(" streamGroupCallAudio no implementado (usar WebSocket)");
+        Log.warn(" streamGroupCallAudio no implementado (usar WebSocket)");
         return false;
     }
 
     // ==================== MÉTODOS AUXILIARES ====================
 
-    private void handleUserDisconnect(String username) {
-        userManager.unregisterUser(username);
-
-        for (Set<String> members : groups.values()) {
-            members.remove(username);
-        }
+    private void handleUserDisconnect(String username, UserSession session) {
+        // La membresía a grupos es persistente: desconectarse no saca al usuario
+        userManager.unregisterUser(username, session);
+        // Ya hay una sesión nueva: el cierre de la anterior no es una salida
+        if (userManager.isUserConnected(username)) return;
 
-        System.out.println(" Usuario desconectado: " + username);
+        Log.info(" Usuario desconectado: {}", username);
         notifyUserLeft(username);
+        ClusterRouter cluster = this.cluster;
+        if (cluster != null) cluster.announceOffline(username);
     }
 
-    private Message createMessage(String sender, String content, String type) {
+    // Un registro ya trae cada campo por separado: no hay que partir ninguna línea
+    private Message[] toMessages(List<MessageRecord> records) {
+        Message[] messages = new Message[records.size()];
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = toMessage(records.get(i));
+        }
+        return messages;
+    }
+
+    private static Message toMessage(MessageRecord record) {
         Message msg = new Message();
-        msg.sender = sender;
-        msg.content = content;
-        msg.timestamp = LocalDateTime.now().format(formatter);
-        msg.type = type;
+        msg.sender = record.getSender();
+        msg.content = record.isAudio() ? "[AUDIO:" + record.getAudioRef() + "]" : record.getContent();
+        msg.timestamp = formatTimestamp(record.getTimestamp());
+        msg.type = record.getType().getLabel();
+        msg.epochMillis = record.getTimestamp();
+        msg.seq = record.getSeq();
         return msg;
     }
 
-    private Message[] parseHistoryLines(List<String> lines) {
-        List<Message> messages = new ArrayList<>();
+    private static String formatTimestamp(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault()).format(formatter);
+    }
+
+    private void notifyUserJoined(String username) {
+        userManager.notifyAll(username, presenceKey(username), callback -> callback.onUserJoinedAsync(username));
+    }
+
+    private void notifyUserLeft(String username) {
+        userManager.notifyAll(null, presenceKey(username), callback -> callback.onUserLeftAsync(username));
+    }
+
+    // Entradas/salidas repetidas del mismo usuario se fusionan en la cola de cada receptor
+    private String presenceKey(String username) {
+        return "presence:" + username;
+    }
+
+    private void notifyGroupCreated(String groupName, String creator) {
+        userManager.notifyAll(null, callback -> callback.onGroupCreatedAsync(groupName, creator));
+    }
 
-        for (String line : lines) {
-            Message msg = parseHistoryLine(line);
-            if (msg != null) {
-                messages.add(msg);
+    // Fan-out asíncrono: se encola el callback en la cola de salida de cada miembro
+    // Los miembros desconectados reciben la copia en su buzón
+    private void notifyGroupMembers(String groupName, String excludeUser, UserManager.CallbackAction action,
+                                    MessageRecord offlineCopy) {
+        Set<String> members = groupManager.getMembers(groupName);
+
+        if (members == null) return;
+
+        long start = System.nanoTime();
+        int recipients = 0;
+        for (String member : members) {
+            if (!member.equals(excludeUser)) {
+                deliverOrStore(member, action, offlineCopy);
+                recipients++;
             }
         }
-
-        return messages.toArray(new Message[0]);
+        recordFanout(recipients, start);
     }
 
-    private Message parseHistoryLine(String line) {
-        try {
-            Message msg = new Message();
-            int firstBracket = line.indexOf('[');
-            int secondBracket = line.indexOf(']');
-
-            if (firstBracket >= 0 && secondBracket > firstBracket) {
-                msg.timestamp = line.substring(firstBracket + 1, secondBracket).trim();
-                String rest = line.substring(secondBracket + 1).trim();
-                int colonIndex = rest.indexOf(':');
-
-                if (colonIndex > 0) {
-                    msg.sender = rest.substring(0, colonIndex).trim();
-                    msg.content = rest.substring(colonIndex + 1).trim();
-                    msg.type = "private";
-                    return msg;
-                }
+    // Avisos de llamada: no tiene sentido guardarlos en el buzón
+    private void notifyGroupMembers(String groupName, String excludeUser, UserManager.CallbackAction action) {
+        Set<String> members = groupManager.getMembers(groupName);
+        if (members == null) return;
+
+        for (String member : members) {
+            if (!member.equals(excludeUser)) {
+                userManager.deliver(member, action);
             }
-        } catch (Exception e) {
-            // Ignorar
         }
-        return null;
     }
 
-    private void notifyUserJoined(String username) {
-        userManager.notifyAll(username, callback -> callback.onUserJoined(username));
+    private static void recordFanout(int recipients, long startNanos) {
+        FANOUT_RECIPIENTS.record(recipients);
+        FANOUT_TIME.recordSince(startNanos);
     }
 
-    private void notifyUserLeft(String username) {
-        userManager.notifyAll(null, callback -> callback.onUserLeft(username));
+    // Entrega a quien está conectado aquí (o tiene aquí su buzón) y manda una sola
+    // copia a cada nodo con los destinatarios que le tocan
+    private int route(Collection<String> recipients, String excludeUser, Message msg, MessageRecord record) {
+        ClusterRouter cluster = this.cluster;
+        Map<String, List<String>> remote = new HashMap<>();
+        int count = 0;
+        for (String recipient : recipients) {
+            if (recipient.equals(excludeUser)) continue;
+            count++;
+            if (cluster == null || userManager.isUserConnected(recipient)) {
+                sendMessageTo(recipient, msg, record);
+                continue;
+            }
+            String node = cluster.nodeFor(recipient);
+            if (cluster.isSelf(node)) {
+                sendMessageTo(recipient, msg, record);
+            } else {
+                remote.computeIfAbsent(node, n -> new ArrayList<>()).add(recipient);
+            }
+        }
+        if (cluster != null) {
+            cluster.replicate(record, remote);
+        }
+        return count;
     }
 
-    private void notifyGroupCreated(String groupName, String creator) {
-        userManager.notifyAll(null, callback -> callback.onGroupCreated(groupName, creator));
+    // Los mensajes de texto pasan por el agrupador; sin conexión van al buzón.
+    // Lo que la cola acepta y luego pierde (descartado, cola cerrada o fallo del
+    // callback) el agrupador también lo manda al buzón
+    private void sendMessageTo(String username, Message msg, MessageRecord offlineCopy) {
+        if (!messageBatcher.submit(username, msg, offlineCopy)) {
+            offlineInbox.append(username, offlineCopy);
+        }
     }
 
-    private void notifyGroupMembers(String groupName, String excludeUser, NotificationAction action) {
-        Set<String> members = groups.get(groupName);
+    private void deliverOrStore(String username, UserManager.CallbackAction action, MessageRecord offlineCopy) {
+        if (!userManager.deliver(username, action, () -> offlineInbox.append(username, offlineCopy))) {
+            offlineInbox.append(username, offlineCopy);
+        }
+    }
 
-        if (members == null) return;
+    // ==================== BUZÓN ====================
 
-        for (String member : members) {
-            if (!member.equals(excludeUser)) {
-                ChatCallbackPrx callback = userManager.getUser(member);
-                if (callback != null) {
-                    try {
-                        action.execute(callback);
-                    } catch (Exception e) {
-                        System.err.println(" Error notificando a " + member);
+    // Lo pendiente se envía en lotes de onMessagesBatch; cada lote se confirma en
+    // el buzón cuando el cliente lo recibe y solo entonces se manda el siguiente
+    private void deliverInbox(String username) {
+        OfflineInbox.Batch batch = offlineInbox.pending(username, INBOX_BATCH);
+        if (batch == null) return;
+
+        Message[] messages = toMessages(batch.getMessages());
+        userManager.deliver(username, callback -> MessageBatcher.sendBatch(callback, messages)
+                .thenRun(() -> {
+                    offlineInbox.ack(username, batch.getEndOffset());
+                    Log.info(" Buzón de {}: {} mensajes entregados", username, messages.length);
+                    if (batch.hasMore()) {
+                        deliverInbox(username);
                     }
+                }));
+    }
+
+    private void deliverRemoteInbox(String username, String home) {
+        cluster.fetchInbox(home, username, INBOX_BATCH).whenComplete((batch, error) -> {
+            if (error != null) {
+                Log.warn(" No se pudo leer el buzón de {} en {}: {}", username, home, error.getMessage());
+                return;
+            }
+            if (batch == null || batch.messages.length == 0) return;
+
+            userManager.deliver(username, callback -> MessageBatcher.sendBatch(callback, batch.messages)
+                    .thenRun(() -> {
+                        cluster.ackInbox(home, username, batch.endOffset);
+                        Log.info(" Buzón de {} en {}: {} mensajes entregados", username, home, batch.messages.length);
+                        if (batch.more) {
+                            deliverRemoteInbox(username, home);
+                        }
+                    }));
+        });
+    }
+
+    // ==================== CLÚSTER ====================
+
+    public String[] getLocalUsers() {
+        return userManager.listUsers();
+    }
+
+    // Copia que no llegó al nodo donde estaba el usuario: se entrega si está
+    // conectado a este nodo y, si no, queda en el buzón
+    public void deliverLocally(String username, MessageRecord record) {
+        sendMessageTo(username, toMessage(record), record);
+    }
+
+    // Copia de un mensaje escrito en otro nodo: se guarda igual que uno propio y
+    // se entrega a los destinatarios que este nodo atiende
+    public void deliverReplicated(MessageRecord record, String[] recipients) {
+        if (recipients.length > 0) {
+            Message msg = toMessage(record);
+            for (String recipient : recipients) {
+                sendMessageTo(recipient, msg, record);
+            }
+        }
+        persist(record);
+    }
+
+    public void remoteUserOnline(String username) {
+        notifyUserJoined(username);
+    }
+
+    public void remoteUserOffline(String username) {
+        notifyUserLeft(username);
+    }
+
+    public void applyGroupChange(byte op, String groupName, String username) {
+        switch (op) {
+            case GroupJournal.CREATE -> {
+                if (groupManager.createGroup(groupName, username)) {
+                    notifyGroupCreated(groupName, username);
                 }
             }
+            case GroupJournal.ADD -> groupManager.addMember(groupName, username);
+            case GroupJournal.REMOVE -> groupManager.removeMember(groupName, username);
+            default -> Log.warn("Cambio de grupo desconocido desde otro nodo: {}", op);
+        }
+    }
+
+    public GroupState[] getGroupStates() {
+        List<String> names = groupManager.listGroups();
+        List<GroupState> states = new ArrayList<>(names.size());
+        for (String name : names) {
+            Set<String> members = groupManager.getMembers(name);
+            if (members != null) {
+                states.add(new GroupState(name, members.toArray(new String[0])));
+            }
         }
+        return states.toArray(new GroupState[0]);
+    }
+
+    // Solo agrega: lo que este nodo ya tenía se conserva
+    public void mergeGroups(GroupState[] states) {
+        for (GroupState state : states) {
+            if (state.members.length == 0) continue;
+            groupManager.createGroup(state.name, state.members[0]);
+            for (String member : state.members) {
+                groupManager.addMember(state.name, member);
+            }
+        }
+    }
+
+    public InboxBatch getInboxBatch(String username, int max) {
+        OfflineInbox.Batch batch = offlineInbox.pending(username, Math.min(max, INBOX_BATCH));
+        if (batch == null) return new InboxBatch(new Message[0], 0, false);
+        return new InboxBatch(toMessages(batch.getMessages()), batch.getEndOffset(), batch.hasMore());
     }
 
-    @FunctionalInterface
-    private interface NotificationAction {
-        void execute(ChatCallbackPrx callback) throws Exception;
+    public void ackInbox(String username, long endOffset) {
+        offlineInbox.ack(username, endOffset);
     }
 }
@@ -0,0 +1,293 @@
+package com.icesi.chatapp.services;
+
+import Chat.Message;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// Caché LRU con los últimos mensajes de las conversaciones más leídas, ya
+// convertidos a Chat.Message. Se limita por bytes estimados y se mantiene al
+// día en cada escritura, así que abrir un grupo popular no vuelve a tocar disco.
+public class HistoryCache {
+    public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+    public static final int DEFAULT_TAIL_SIZE = 200;
+
+    // Bytes fijos aproximados de un Message con sus cuatro String
+    private static final int MESSAGE_OVERHEAD = 160;
+    private static final int STAMP_STRIPES = 256;
+
+    private final long maxBytes;
+    private final int tailSize;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    // Escrituras por franja de claves: una carga que se cruzó con una escritura no se guarda
+    private final long[] writeStamps = new long[STAMP_STRIPES];
+    private long usedBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public HistoryCache() {
+        this(DEFAULT_MAX_BYTES, DEFAULT_TAIL_SIZE);
+    }
+
+    public HistoryCache(long maxBytes, int tailSize) {
+        this.maxBytes = maxBytes;
+        this.tailSize = tailSize;
+    }
+
+    public static String privateKey(String user1, String user2) {
+        return user1.compareTo(user2) <= 0
+                ? "private\0" + user1 + "\0" + user2
+                : "private\0" + user2 + "\0" + user1;
+    }
+
+    public static String groupKey(String groupName) {
+        return "group\0" + groupName;
+    }
+
+    // ==================== LECTURA ====================
+
+    // Historial completo: solo se sirve de caché si la cola contiene toda la conversación
+    public Message[] getAll(String key, Supplier<Message[]> loader) {
+        Message[] cached = cachedAll(key);
+        if (cached != null) return cached;
+
+        long stamp = stampOf(key);
+        return loadAll(key, loader, stamp);
+    }
+
+    // Los últimos 'limit' mensajes anteriores al cursor: con beforeSeq > 0 los de
+    // secuencia menor, si no los de timestamp < beforeTimestamp (<= 0: los más recientes)
+    public Message[] getPage(String key, long beforeTimestamp, long beforeSeq, int limit,
+                             Supplier<Message[]> loader) {
+        Message[] cached = cachedPage(key, beforeTimestamp, beforeSeq, limit);
+        if (cached != null) return cached;
+
+        long stamp = stampOf(key);
+        return loadPage(key, beforeTimestamp, beforeSeq, limit, loader, stamp);
+    }
+
+    // Igual que getAll, pero un fallo se carga en 'executor' en vez de en el hilo que llama;
+    // un acierto se resuelve en el acto
+    public CompletableFuture<Message[]> getAllAsync(String key, Supplier<Message[]> loader, Executor executor) {
+        Message[] cached = cachedAll(key);
+        if (cached != null) return CompletableFuture.completedFuture(cached);
+
+        // El sello se toma antes de salir del hilo para no perder una escritura intermedia
+        long stamp = stampOf(key);
+        return CompletableFuture.supplyAsync(() -> loadAll(key, loader, stamp), executor);
+    }
+
+    public CompletableFuture<Message[]> getPageAsync(String key, long beforeTimestamp, long beforeSeq, int limit,
+                                                     Supplier<Message[]> loader, Executor executor) {
+        Message[] cached = cachedPage(key, beforeTimestamp, beforeSeq, limit);
+        if (cached != null) return CompletableFuture.completedFuture(cached);
+
+        long stamp = stampOf(key);
+        return CompletableFuture.supplyAsync(
+                () -> loadPage(key, beforeTimestamp, beforeSeq, limit, loader, stamp), executor);
+    }
+
+    private Message[] cachedAll(String key) {
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.complete) {
+                hits.incrementAndGet();
+                return entry.toArray(0, entry.messages.size());
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    private Message[] cachedPage(String key, long beforeTimestamp, long beforeSeq, int limit) {
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                Message[] page = entry.page(beforeTimestamp, beforeSeq, limit);
+                if (page != null) {
+                    hits.incrementAndGet();
+                    return page;
+                }
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    private Message[] loadAll(String key, Supplier<Message[]> loader, long stamp) {
+        Message[] loaded = loader.get();
+        fill(key, loaded, true, stamp);
+        return loaded;
+    }
+
+    private Message[] loadPage(String key, long beforeTimestamp, long beforeSeq, int limit,
+                               Supplier<Message[]> loader, long stamp) {
+        Message[] loaded = loader.get();
+        // Solo la página más reciente sirve como cola de la conversación
+        if (beforeTimestamp <= 0 && beforeSeq <= 0) {
+            fill(key, loaded, loaded.length < limit, stamp);
+        }
+        return loaded;
+    }
+
+    // ==================== ESCRITURA ====================
+
+    // Se llama después de guardar el mensaje en el repositorio, con su secuencia
+    public synchronized void append(String key, Message msg) {
+        writeStamps[stripe(key)]++;
+
+        Entry entry = entries.get(key);
+        if (entry == null) return;
+
+        // Sin secuencia, o si llega fuera del orden del log (su continuación corrió
+        // después que la de un mensaje posterior), la cola se recarga en la próxima lectura
+        if (msg.seq <= 0 || msg.seq <= entry.lastSeq()) {
+            entries.remove(key);
+            usedBytes -= entry.bytes;
+            return;
+        }
+        usedBytes += entry.add(msg);
+        while (entry.messages.size() > tailSize) {
+            usedBytes -= entry.removeOldest();
+            entry.complete = false;
+        }
+        evictIfNeeded();
+    }
+
+    private void fill(String key, Message[] messages, boolean complete, long stamp) {
+        synchronized (this) {
+            if (writeStamps[stripe(key)] != stamp) return;
+
+            // Sin escrituras de por medio, la carga nueva reemplaza a una cola más corta
+            Entry existing = entries.get(key);
+            if (existing != null) {
+                boolean covers = existing.messages.size() >= Math.min(messages.length, tailSize)
+                        && (existing.complete || !complete);
+                if (covers) return;
+                entries.remove(key);
+                usedBytes -= existing.bytes;
+            }
+
+            Entry entry = new Entry();
+            int start = Math.max(0, messages.length - tailSize);
+            for (int i = start; i < messages.length; i++) {
+                usedBytes += entry.add(messages[i]);
+            }
+            entry.complete = complete && start == 0;
+            entries.put(key, entry);
+            evictIfNeeded();
+        }
+    }
+
+    private void evictIfNeeded() {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (usedBytes > maxBytes && it.hasNext()) {
+            usedBytes -= it.next().getValue().bytes;
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private synchronized long stampOf(String key) {
+        return writeStamps[stripe(key)];
+    }
+
+    private static int stripe(String key) {
+        return (key.hashCode() & 0x7fffffff) % STAMP_STRIPES;
+    }
+
+    // ==================== MÉTRICAS ====================
+
+    public long getHits() { return hits.get(); }
+    public long getMisses() { return misses.get(); }
+    public long getEvictions() { return evictions.get(); }
+    public synchronized long getUsedBytes() { return usedBytes; }
+    public synchronized int getConversations() { return entries.size(); }
+
+    public String describe() {
+        return "historial en caché: " + getConversations() + " conversaciones, " + getUsedBytes() + " bytes"
+                + ", aciertos=" + getHits() + ", fallos=" + getMisses() + ", expulsiones=" + getEvictions();
+    }
+
+    // Cola de una conversación en orden cronológico
+    private static class Entry {
+        private final ArrayDeque<Message> messages = new ArrayDeque<>();
+        private final ArrayDeque<Long> timestamps = new ArrayDeque<>();
+        private long bytes;
+        private boolean complete;
+
+        // Timestamps no decrecientes con el epoch en ms del registro, igual que el
+        // índice del log (no el texto en segundos de Message.timestamp)
+        long add(Message msg) {
+            Long last = timestamps.peekLast();
+            messages.addLast(msg);
+            timestamps.addLast(last != null && msg.epochMillis < last ? last : msg.epochMillis);
+            long size = sizeOf(msg);
+            bytes += size;
+            return size;
+        }
+
+        long lastSeq() {
+            Message last = messages.peekLast();
+            return last != null ? last.seq : 0;
+        }
+
+        long removeOldest() {
+            timestamps.removeFirst();
+            long size = sizeOf(messages.removeFirst());
+            bytes -= size;
+            return size;
+        }
+
+        // null si la cola no alcanza para responder con certeza
+        Message[] page(long beforeTimestamp, long beforeSeq, int limit) {
+            int end = messages.size();
+            if (beforeSeq > 0) {
+                // Las secuencias crecen en el orden de la cola
+                end = 0;
+                for (Message msg : messages) {
+                    if (msg.seq >= beforeSeq) break;
+                    end++;
+                }
+            } else if (beforeTimestamp > 0) {
+                end = 0;
+                for (long ts : timestamps) {
+                    if (ts >= beforeTimestamp) break;
+                    end++;
+                }
+            }
+            if (end >= limit) return toArray(end - limit, end);
+            return complete ? toArray(0, end) : null;
+        }
+
+        Message[] toArray(int from, int to) {
+            List<Message> out = new ArrayList<>(to - from);
+            int i = 0;
+            for (Message msg : messages) {
+                if (i >= to) break;
+                if (i >= from) out.add(msg);
+                i++;
+            }
+            return out.toArray(new Message[0]);
+        }
+
+        private static long sizeOf(Message msg) {
+            return MESSAGE_OVERHEAD + 16 + 2L * (length(msg.sender) + length(msg.content)
+                    + length(msg.timestamp) + length(msg.type));
+        }
+
+        private static int length(String value) {
+            return value != null ? value.length() : 0;
+        }
+    }
+}
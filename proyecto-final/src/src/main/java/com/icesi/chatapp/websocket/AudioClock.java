@@ -0,0 +1,21 @@
+package com.icesi.chatapp.websocket;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// Reloj de frames compartido por todas las llamadas (mezcla, jitter buffer)
+public final class AudioClock {
+    private static final ScheduledExecutorService CLOCK = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "audio-clock");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private AudioClock() {}
+
+    public static ScheduledFuture<?> every(long periodMillis, Runnable task) {
+        return CLOCK.scheduleAtFixedRate(task, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,44 @@
+package com.icesi.chatapp.websocket;
+
+import java.nio.ByteBuffer;
+
+// Cabecera de los frames binarios de audio (big-endian, 12 bytes):
+//   [0-1] magic 0xA5 0x01   [2] codec   [3] flags (reservado)
+//   [4-7] secuencia (uint32) [8-11] timestamp de captura en ms (uint32)
+// Los frames sin cabecera (clientes antiguos) se tratan como PCM crudo.
+public final class AudioFrame {
+    public static final int HEADER_SIZE = 12;
+    public static final byte MAGIC_0 = (byte) 0xA5;
+    public static final byte MAGIC_1 = 0x01;
+    public static final byte CODEC_PCM16_16K = 0;
+
+    private AudioFrame() {}
+
+    public static boolean hasHeader(ByteBuffer frame) {
+        int base = frame.position();
+        // El payload PCM de 16 bits siempre tiene longitud par
+        return frame.remaining() >= HEADER_SIZE
+                && (frame.remaining() - HEADER_SIZE) % 2 == 0
+                && frame.get(base) == MAGIC_0
+                && frame.get(base + 1) == MAGIC_1;
+    }
+
+    public static byte codec(ByteBuffer frame) {
+        return frame.get(frame.position() + 2);
+    }
+
+    public static int sequence(ByteBuffer frame) {
+        return frame.getInt(frame.position() + 4);
+    }
+
+    public static int timestamp(ByteBuffer frame) {
+        return frame.getInt(frame.position() + 8);
+    }
+
+    // Vista del payload sin copiar
+    public static ByteBuffer payload(ByteBuffer frame) {
+        ByteBuffer payload = frame.duplicate();
+        payload.position(frame.position() + HEADER_SIZE);
+        return payload.slice();
+    }
+}
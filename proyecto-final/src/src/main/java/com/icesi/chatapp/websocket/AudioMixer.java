@@ -0,0 +1,153 @@
+package com.icesi.chatapp.websocket;
+
+import com.icesi.chatapp.metrics.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+
+// Mezclador N-a-1 para una llamada grupal. Cada participante deposita su último
+// frame PCM (16 bits LE, mono, 16 kHz); en cada tick del reloj se suman todos
+// los hablantes y a cada oyente se le envía un único frame sin su propia voz.
+// Los buffers se reservan al unirse, así que el tick no crea objetos.
+public class AudioMixer {
+    public static final int SAMPLE_RATE = 16000;
+    // Igual al bufferSize del ScriptProcessor del cliente web
+    public static final int FRAME_SAMPLES = 4096;
+    public static final long FRAME_MILLIS = FRAME_SAMPLES * 1000L / SAMPLE_RATE;
+
+    private final String callId;
+    private final int[] mix = new int[FRAME_SAMPLES];
+    // Copia inmutable que se reemplaza al entrar/salir alguien; el tick solo la recorre
+    private volatile Channel[] channels = new Channel[0];
+    private ScheduledFuture<?> clock;
+
+    public AudioMixer(String callId) {
+        this.callId = callId;
+    }
+
+    public synchronized void start() {
+        if (clock == null) {
+            clock = AudioClock.every(FRAME_MILLIS, this::tick);
+        }
+    }
+
+    public synchronized void stop() {
+        if (clock != null) {
+            clock.cancel(false);
+            clock = null;
+        }
+    }
+
+    public synchronized void addParticipant(String username, AudioSender sender) {
+        List<Channel> updated = new ArrayList<>();
+        for (Channel channel : channels) {
+            if (!channel.username.equals(username)) updated.add(channel);
+        }
+        updated.add(new Channel(username, sender));
+        channels = updated.toArray(new Channel[0]);
+    }
+
+    public synchronized void removeParticipant(String username) {
+        List<Channel> updated = new ArrayList<>();
+        for (Channel channel : channels) {
+            if (!channel.username.equals(username)) updated.add(channel);
+        }
+        channels = updated.toArray(new Channel[0]);
+    }
+
+    // Llamado desde el hilo de WebSocket del emisor
+    public void offer(String username, ByteBuffer frame) {
+        for (Channel channel : channels) {
+            if (channel.username.equals(username)) {
+                channel.write(frame);
+                return;
+            }
+        }
+    }
+
+    private void tick() {
+        try {
+            Channel[] current = channels;
+            Arrays.fill(mix, 0);
+
+            int speakers = 0;
+            for (Channel channel : current) {
+                if (channel.takeFrame()) {
+                    short[] samples = channel.mixing;
+                    for (int i = 0; i < FRAME_SAMPLES; i++) {
+                        mix[i] += samples[i];
+                    }
+                    speakers++;
+                }
+            }
+            if (speakers == 0) return;
+
+            for (Channel listener : current) {
+                // Si solo habla este oyente no hay nada que enviarle
+                if (listener.speaking && speakers == 1) continue;
+                // El buffer de salida se reutiliza: solo se escribe si el envío anterior terminó
+                if (listener.sender.getInFlight() > 0) continue;
+
+                ByteBuffer out = listener.output;
+                out.clear();
+                short[] own = listener.mixing;
+                for (int i = 0; i < FRAME_SAMPLES; i++) {
+                    int sample = listener.speaking ? mix[i] - own[i] : mix[i];
+                    if (sample > Short.MAX_VALUE) sample = Short.MAX_VALUE;
+                    else if (sample < Short.MIN_VALUE) sample = Short.MIN_VALUE;
+                    out.putShort((short) sample);
+                }
+                out.flip();
+                listener.sender.send(out);
+            }
+        } catch (Exception e) {
+            Log.error(" Error mezclando audio de {}: {}", callId, e.getMessage());
+        }
+    }
+
+    private static class Channel {
+        final String username;
+        final AudioSender sender;
+        final ByteBuffer output = ByteBuffer.allocate(FRAME_SAMPLES * 2).order(ByteOrder.LITTLE_ENDIAN);
+        // 'incoming' lo escribe el emisor; 'mixing' solo lo usa el tick
+        short[] incoming = new short[FRAME_SAMPLES];
+        short[] mixing = new short[FRAME_SAMPLES];
+        boolean ready;
+        boolean speaking;
+
+        Channel(String username, AudioSender sender) {
+            this.username = username;
+            this.sender = sender;
+        }
+
+        synchronized void write(ByteBuffer frame) {
+            int base = frame.position();
+            int samples = Math.min(FRAME_SAMPLES, frame.remaining() / 2);
+            for (int i = 0; i < samples; i++) {
+                int lo = frame.get(base + 2 * i) & 0xFF;
+                int hi = frame.get(base + 2 * i + 1);
+                incoming[i] = (short) ((hi << 8) | lo);
+            }
+            for (int i = samples; i < FRAME_SAMPLES; i++) {
+                incoming[i] = 0;
+            }
+            ready = true;
+        }
+
+        // Intercambia los buffers si llegó un frame desde el último tick
+        synchronized boolean takeFrame() {
+            speaking = ready;
+            if (ready) {
+                short[] swap = mixing;
+                mixing = incoming;
+                incoming = swap;
+                ready = false;
+            }
+            return speaking;
+        }
+    }
+}
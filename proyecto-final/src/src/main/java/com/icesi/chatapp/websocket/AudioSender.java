@@ -0,0 +1,76 @@
+package com.icesi.chatapp.websocket;
+
+import com.icesi.chatapp.metrics.Counter;
+import com.icesi.chatapp.metrics.Metrics;
+
+import javax.websocket.SendHandler;
+import javax.websocket.Session;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Envío asíncrono de frames de audio hacia una sesión. Si el oyente ya tiene
+// maxInFlight envíos sin completar, el frame nuevo se descarta: para voz en
+// tiempo real es mejor perder un frame que acumular retraso.
+public class AudioSender {
+    // Totales de todas las sesiones; los de cada instancia son solo de su oyente
+    private static final Counter FRAMES_SENT = Metrics.counter("ws.frames.sent");
+    private static final Counter BYTES_SENT = Metrics.counter("ws.bytes.sent");
+    private static final Counter FRAMES_DROPPED = Metrics.counter("ws.frames.dropped");
+    private static final Counter FRAMES_FAILED = Metrics.counter("ws.frames.failed");
+
+    private final Session session;
+    private final int maxInFlight;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicLong sentFrames = new AtomicLong();
+    private final AtomicLong sentBytes = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final AtomicLong failedFrames = new AtomicLong();
+
+    // Un único handler por sesión para no crear uno por frame
+    private final SendHandler onSent = result -> {
+        inFlight.decrementAndGet();
+        if (result.isOK()) {
+            sentFrames.incrementAndGet();
+            FRAMES_SENT.increment();
+        } else {
+            failedFrames.incrementAndGet();
+            FRAMES_FAILED.increment();
+        }
+    };
+
+    public AudioSender(Session session, int maxInFlight) {
+        this.session = session;
+        this.maxInFlight = maxInFlight;
+    }
+
+    public boolean send(ByteBuffer frame) {
+        if (!session.isOpen()) return false;
+
+        if (inFlight.incrementAndGet() > maxInFlight) {
+            inFlight.decrementAndGet();
+            droppedFrames.incrementAndGet();
+            FRAMES_DROPPED.increment();
+            return false;
+        }
+
+        sentBytes.addAndGet(frame.remaining());
+        BYTES_SENT.add(frame.remaining());
+        try {
+            session.getAsyncRemote().sendBinary(frame, onSent);
+            return true;
+        } catch (Exception e) {
+            inFlight.decrementAndGet();
+            failedFrames.incrementAndGet();
+            FRAMES_FAILED.increment();
+            return false;
+        }
+    }
+
+    public int getInFlight() { return inFlight.get(); }
+    public long getSentFrames() { return sentFrames.get(); }
+    public long getSentBytes() { return sentBytes.get(); }
+    public long getDroppedFrames() { return droppedFrames.get(); }
+    public long getFailedFrames() { return failedFrames.get(); }
+}
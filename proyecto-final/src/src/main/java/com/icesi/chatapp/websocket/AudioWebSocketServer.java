@@ -1,268 +1,541 @@
 package com.icesi.chatapp.websocket;
 
+import com.icesi.chatapp.managers.GroupCallRegistry;
+import com.icesi.chatapp.metrics.Counter;
+import com.icesi.chatapp.metrics.Histogram;
+import com.icesi.chatapp.metrics.Log;
+import com.icesi.chatapp.metrics.Metrics;
+
 import javax.websocket.*;
 import javax.websocket.server.PathParam;
 import javax.websocket.server.ServerEndpoint;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 @ServerEndpoint("/audio/{username}")
 public class AudioWebSocketServer {
 
-    // Mapa de usuarios conectados: username -> Session
-    private static final Map<String, Session> userSessions = new ConcurrentHashMap<>();
+    // Envíos de audio sin completar permitidos por oyente antes de descartar frames
+    private static final int MAX_SENDS_IN_FLIGHT = 4;
+
+    // Mapa de usuarios conectados: username -> estado de su conexión
+    private static final Map<String, SessionState> userSessions = new ConcurrentHashMap<>();
+
+    // Mapa de llamadas activas: callId -> participantes
+    private static final Map<String, Map<String, SessionState>> activeCalls = new ConcurrentHashMap<>();
+
+    // Registro de llamadas grupales compartido con el servicio Ice: quién puede
+    // iniciar, unirse y recibir invitaciones
+    private static volatile GroupCallRegistry groupCalls;
+
+    // Llamadas en modo mezcla: callId -> mezclador (el resto se retransmite tal cual)
+    private static final Map<String, AudioMixer> mixers = new ConcurrentHashMap<>();
+
+    // Llamadas en modo SFU: callId -> selección de hablantes por oyente
+    private static final Map<String, SpeakerSelector> selectors = new ConcurrentHashMap<>();
+
+    // Jitter buffers por llamada para los frames que traen cabecera de secuencia
+    private static final Map<String, CallJitterBuffers> jitterBuffers = new ConcurrentHashMap<>();
+
+    // Detección de voz por llamada: los frames en silencio no se reenvían
+    private static final Map<String, CallVoiceActivity> voiceActivity = new ConcurrentHashMap<>();
 
-    // Mapa de llamadas activas: callId -> Set<usernames>
-    private static final Map<String, Map<String, Session>> activeCalls = new ConcurrentHashMap<>();
+    private static final Counter FRAMES_RECEIVED = Metrics.counter("ws.frames.received");
+    private static final Counter BYTES_RECEIVED = Metrics.counter("ws.bytes.received");
+    private static final Counter FRAMES_SILENT = Metrics.counter("ws.frames.silent");
+    private static final Counter FRAMES_UNSELECTED = Metrics.counter("ws.frames.unselected");
+    // Frames con el magic de control que no se decodificaron y se trataron como audio
+    private static final Counter CONTROL_INVALID = Metrics.counter("ws.control.invalid");
+    private static final Histogram RELAY_TIME = Metrics.histogram("ws.relay.us");
+
+    // El número de argumentos de un mensaje de control cabe en un byte
+    private static final int MAX_ANNOUNCED_SPEAKERS = 254;
+
+    static {
+        Metrics.gauge("ws.sessions", userSessions::size);
+        Metrics.gauge("ws.calls.active", activeCalls::size);
+        Metrics.gauge("ws.calls.mixed", mixers::size);
+        Metrics.gauge("ws.calls.sfu", selectors::size);
+    }
+
+    // Se llama antes de arrancar el servidor WebSocket
+    public static void setGroupCalls(GroupCallRegistry registry) {
+        registry.addEndListener((callId, groupName) -> closeCall(callId));
+        groupCalls = registry;
+    }
+
+    // Tyrus crea un endpoint por conexión: este es el estado de la propia
+    private SessionState state;
 
     @OnOpen
     public void onOpen(Session session, @PathParam("username") String username) {
-        userSessions.put(username, session);
+        state = new SessionState(username, session, new AudioSender(session, MAX_SENDS_IN_FLIGHT));
+        userSessions.put(username, state);
         //System.out.println(" WebSocket conectado: " + username);
-
-        // Guardar username en sesión
-        session.getUserProperties().put("username", username);
     }
 
     @OnMessage
     public void onBinaryMessage(ByteBuffer audioData, Session session) {
-        String username = (String) session.getUserProperties().get("username");
-        String callId = (String) session.getUserProperties().get("callId");
-        String callType = (String) session.getUserProperties().get("callType");
+        // Solo es control si se decodifica entero; lo demás es audio
+        ControlMessage control = ControlMessage.decode(audioData);
+        if (control != null) {
+            onControlMessage(control);
+            return;
+        }
+        if (ControlMessage.hasMagic(audioData)) CONTROL_INVALID.increment();
+
+        String username = state.getUsername();
+        String callId = state.getCallId();
+        FRAMES_RECEIVED.increment();
+        BYTES_RECEIVED.add(audioData.remaining());
 
         if (callId == null) {
-            System.out.println(" Audio recibido sin callId activo de: " + username);
+            Log.debug(" Audio recibido sin callId activo de: {}", username);
+            return;
+        }
+
+        if (AudioFrame.hasHeader(audioData)) {
+            if (AudioFrame.codec(audioData) != AudioFrame.CODEC_PCM16_16K) return;
+            // Se reordena y se libera a ritmo constante desde el reloj de audio.
+            // Solo se crean buffers para una llamada en curso: los de una llamada
+            // ya cerrada no los detendría nadie
+            CallJitterBuffers buffers = jitterBuffers.computeIfAbsent(callId, id -> {
+                if (!activeCalls.containsKey(id)) return null;
+                CallJitterBuffers created = new CallJitterBuffers(id, AudioMixer.FRAME_MILLIS,
+                        AudioWebSocketServer::forwardFrame);
+                created.start();
+                return created;
+            });
+            if (buffers != null) buffers.offer(username, audioData);
+            return;
+        }
+
+        // Clientes sin cabecera: se reenvía en cuanto llega
+        forwardFrame(callId, username, audioData);
+    }
+
+    private static void forwardFrame(String callId, String username, ByteBuffer audioData) {
+        // Sin entrada la llamada ya se cerró (frames que el reloj libera tarde)
+        CallVoiceActivity vad = voiceActivity.get(callId);
+        if (vad == null) return;
+
+        boolean forward = vad.shouldForward(username, audioData);
+        announceSpeakers(callId, vad);
+        if (!forward) {
+            FRAMES_SILENT.increment();
+            return;
+        }
+
+        AudioMixer mixer = mixers.get(callId);
+        if (mixer != null) {
+            mixer.offer(username, audioData);
             return;
         }
 
-        // Retransmitir audio a los participantes de la llamada
-        Map<String, Session> participants = activeCalls.get(callId);
+        // En modo SFU cada oyente solo recibe a los hablantes que le tocan
+        SpeakerSelector selector = selectors.get(callId);
+        if (selector != null) {
+            selector.onFrame(username, vad.levelOf(username), System.currentTimeMillis());
+        }
+
+        // Retransmitir audio a los participantes de la llamada. Tyrus entrega un
+        // buffer nuevo por mensaje, así que todos los envíos comparten el mismo
+        // contenido mediante vistas de solo lectura con su propia posición
+        Map<String, SessionState> participants = activeCalls.get(callId);
         if (participants != null) {
-            participants.forEach((participant, participantSession) -> {
+            long start = System.nanoTime();
+            ByteBuffer frame = audioData.asReadOnlyBuffer();
+            participants.forEach((participant, participantState) -> {
                 // No enviar audio al emisor
-                if (!participant.equals(username) && participantSession.isOpen()) {
-                    try {
-                        // Enviar como mensaje binario
-                        participantSession.getBasicRemote().sendBinary(audioData);
-                    } catch (IOException e) {
-                        System.err.println(" Error enviando audio a " + participant);
+                if (!participant.equals(username)) {
+                    if (selector != null && !selector.shouldForward(participant, username)) {
+                        FRAMES_UNSELECTED.increment();
+                        return;
                     }
+                    participantState.getAudioSender().send(frame.duplicate());
                 }
             });
+            RELAY_TIME.recordSince(start);
         }
     }
 
-    @OnMessage
-    public void onTextMessage(String message, Session session) {
-        String username = (String) session.getUserProperties().get("username");
-        System.out.println(" Mensaje de control de " + username + ": " + message);
-
-        String[] parts = message.split(":");
-        String command = parts[0];
-
-        switch (command) {
-            case "START_CALL":
-                if (parts.length >= 3) {
-                    String callId = parts[1];
-                    String targetUser = parts[2];
-                    startCall(callId, username, targetUser, session);
-                }
-                break;
+    private void onControlMessage(ControlMessage control) {
+        String username = state.getUsername();
+        Log.debug(" Mensaje de control de {}: op {} ({} argumentos)", username,
+                control.getOpcode(), control.getArgCount());
 
-            case "JOIN_CALL":
-                if (parts.length >= 2) {
-                    String callId = parts[1];
-                    joinCall(callId, username, session);
-                }
-                break;
+        String callId = control.arg(0);
+        if (callId == null) return;
 
-            case "END_CALL":
-                if (parts.length >= 2) {
-                    String callId = parts[1];
-                    endCall(callId, username);
-                }
-                break;
-
-            // ← AGREGAR ESTOS CASOS
-            case "START_GROUP_CALL":
-                if (parts.length >= 3) {
-                    String callId = parts[1];
-                    String groupName = parts[2];
-                    startGroupCall(callId, groupName, username, session);
-                }
-                break;
-
-            case "JOIN_GROUP_CALL":
-                if (parts.length >= 3) {
-                    String callId = parts[1];
-                    String groupName = parts[2];
-                    joinGroupCall(callId, groupName, username, session);
+        switch (control.getOpcode()) {
+            case ControlMessage.START_CALL -> {
+                if (control.getArgCount() >= 2) startCall(callId, username, control.arg(1), state);
+            }
+            case ControlMessage.JOIN_CALL -> joinCall(callId, username, state);
+            case ControlMessage.END_CALL -> endCall(callId, username);
+            case ControlMessage.START_GROUP_CALL -> {
+                if (control.getArgCount() >= 2) startGroupCall(callId, control.arg(1), username, state);
+            }
+            case ControlMessage.JOIN_GROUP_CALL -> {
+                if (control.getArgCount() >= 2) joinGroupCall(callId, control.arg(1), username, state);
+            }
+            case ControlMessage.LEAVE_GROUP_CALL -> {
+                if (control.getArgCount() >= 2) leaveGroupCall(callId, control.arg(1), username);
+            }
+            case ControlMessage.SET_CALL_MODE -> {
+                if (control.getArgCount() >= 2) setCallMode(callId, control.arg(1), control.arg(2), username);
+            }
+            case ControlMessage.SUBSCRIBE, ControlMessage.UNSUBSCRIBE, ControlMessage.MUTE, ControlMessage.UNMUTE -> {
+                if (control.getArgCount() >= 2) {
+                    updateSubscription(control.getOpcode(), callId, control.arg(1), username, state);
                 }
-                break;
+            }
+            default -> Log.debug(" Opcode de control desconocido de {}: {}", username, control.getOpcode());
+        }
+    }
 
-            case "LEAVE_GROUP_CALL":
-                if (parts.length >= 3) {
-                    String callId = parts[1];
-                    String groupName = parts[2];
-                    leaveGroupCall(callId, groupName, username);
-                }
-                break;
+    // Los participantes reciben el conjunto de hablantes activos cuando cambia.
+    // Sale por la cola de audio de cada uno: si se descarta, el siguiente
+    // cambio vuelve a mandar el conjunto completo
+    private static void announceSpeakers(String callId, CallVoiceActivity vad) {
+        if (!vad.takeSpeakersChange(System.currentTimeMillis())) return;
+        Map<String, SessionState> participants = activeCalls.get(callId);
+        if (participants == null) return;
+
+        List<String> args = new ArrayList<>();
+        args.add(callId);
+        for (String speaker : vad.getActiveSpeakers()) {
+            if (args.size() > MAX_ANNOUNCED_SPEAKERS) break;
+            args.add(speaker);
         }
+        ByteBuffer message = ControlMessage.encode(ControlMessage.ACTIVE_SPEAKERS, args.toArray(new String[0]));
+        participants.values().forEach(participant -> participant.getAudioSender().send(message.duplicate()));
     }
 
-    // ← AGREGAR ESTOS MÉTODOS
-    private void startGroupCall(String callId, String groupName, String initiator, Session initiatorSession) {
-        Map<String, Session> participants = new ConcurrentHashMap<>();
-        participants.put(initiator, initiatorSession);
-        activeCalls.put(callId, participants);
+    // ==================== LLAMADAS GRUPALES ====================
 
-        initiatorSession.getUserProperties().put("callId", callId);
-        initiatorSession.getUserProperties().put("callType", "group");
+    private void startGroupCall(String callId, String groupName, String initiator, SessionState initiatorState) {
+        GroupCallRegistry registry = groupCalls;
+        // Un callId de una llamada individual en curso no puede convertirse en grupal
+        boolean individual = registry != null && activeCalls.containsKey(callId) && registry.groupOf(callId) == null;
+        if (registry == null || individual || !registry.start(callId, groupName, initiator)) {
+            Log.info(" Llamada grupal {} rechazada: {} en {}", callId, initiator, groupName);
+            rejectCall(initiatorState, callId);
+            return;
+        }
 
-        // Notificar a todos los miembros del grupo
-        // Nota: Aquí deberías obtener la lista de miembros del grupo desde ChatServiceImpl
-        // Por simplicidad, enviaremos la invitación a todos los usuarios conectados
-        userSessions.forEach((user, sess) -> {
-            if (!user.equals(initiator) && sess.isOpen()) {
-                try {
-                    sess.getBasicRemote().sendText(
-                            "GROUP_CALL_INVITATION:" + callId + ":" + groupName + ":" + initiator
-                    );
-                } catch (IOException e) {
-                    System.err.println("Error enviando invitación grupal");
-                }
+        // La llamada pudo iniciarse antes por Ice con el mismo callId
+        activeCalls.computeIfAbsent(callId, id -> new ConcurrentHashMap<>()).put(initiator, initiatorState);
+        openVoiceActivity(callId);
+        initiatorState.joinCall(callId, SessionState.CallType.GROUP);
+        addToMixer(callId, initiator, initiatorState);
+
+        // Solo se invita a los miembros del grupo que tienen el WebSocket abierto
+        ByteBuffer invitation = ControlMessage.encode(ControlMessage.GROUP_CALL_INVITATION,
+                callId, groupName, initiator);
+        int invited = 0;
+        for (String member : registry.membersOf(groupName)) {
+            if (member.equals(initiator)) continue;
+            SessionState memberState = userSessions.get(member);
+            if (memberState == null || !memberState.getSession().isOpen()) continue;
+            try {
+                memberState.getSession().getBasicRemote().sendBinary(invitation.duplicate());
+                invited++;
+            } catch (IOException e) {
+                Log.warn("Error enviando invitación grupal a {}", member);
             }
-        });
+        }
 
-        System.out.println(" Llamada grupal iniciada: " + groupName);
+        Log.info(" Llamada grupal iniciada: {} ({} invitados)", groupName, invited);
     }
 
-    private void joinGroupCall(String callId, String groupName, String username, Session session) {
-        Map<String, Session> participants = activeCalls.get(callId);
-        if (participants != null) {
-            participants.put(username, session);
-            session.getUserProperties().put("callId", callId);
-            session.getUserProperties().put("callType", "group");
-            System.out.println(" Usuario unido a llamada grupal: " + username);
+    private void joinGroupCall(String callId, String groupName, String username, SessionState joining) {
+        GroupCallRegistry registry = groupCalls;
+        if (registry == null || !registry.join(callId, groupName, username)) {
+            Log.info(" {} no puede unirse a la llamada {} de {}", username, callId, groupName);
+            rejectCall(joining, callId);
+            return;
         }
+
+        activeCalls.computeIfAbsent(callId, id -> new ConcurrentHashMap<>()).put(username, joining);
+        openVoiceActivity(callId);
+        joining.joinCall(callId, SessionState.CallType.GROUP);
+        addToMixer(callId, username, joining);
+        Log.info(" Usuario unido a llamada grupal: {}", username);
     }
 
     private void leaveGroupCall(String callId, String groupName, String username) {
-        Map<String, Session> participants = activeCalls.get(callId);
-        if (participants != null) {
-            Session session = participants.remove(username);
-            if (session != null) {
-                session.getUserProperties().remove("callId");
-                session.getUserProperties().remove("callType");
-            }
+        GroupCallRegistry registry = groupCalls;
+        if (registry != null && !groupName.equals(registry.groupOf(callId))) return;
+        leaveGroupCall(callId, username);
+    }
 
-            if (participants.isEmpty()) {
-                activeCalls.remove(callId);
-                System.out.println(" Llamada grupal terminada: " + groupName);
-            } else {
-                System.out.println(" Usuario salió de llamada grupal: " + username);
-            }
+    private static void rejectCall(SessionState rejected, String callId) {
+        try {
+            rejected.getSession().getBasicRemote().sendBinary(
+                    ControlMessage.encode(ControlMessage.CALL_REJECTED, callId));
+        } catch (IOException e) {
+            Log.warn("Error notificando llamada rechazada a {}", rejected.getUsername());
         }
     }
 
-
     @OnClose
     public void onClose(Session session, @PathParam("username") String username) {
-        userSessions.remove(username);
+        userSessions.remove(username, state);
 
         // Limpiar de todas las llamadas activas
-        String callId = (String) session.getUserProperties().get("callId");
+        String callId = state.getCallId();
         if (callId != null) {
             leaveGroupCall(callId, username);
         }
 
-        System.out.println("🔌 WebSocket desconectado: " + username);
+        Log.info("🔌 WebSocket desconectado: {}", username);
     }
 
     @OnError
     public void onError(Session session, Throwable error) {
-        String username = (String) session.getUserProperties().get("username");
-        System.err.println(" Error en WebSocket de " + username + ": " + error.getMessage());
+        String username = state != null ? state.getUsername() : null;
+        Log.error(" Error en WebSocket de {}: {}", username, error.getMessage());
     }
 
     // ==================== GESTIÓN DE LLAMADAS ====================
 
-    private void startCall(String callId, String caller, String target, Session callerSession) {
-        Map<String, Session> participants = new ConcurrentHashMap<>();
-        participants.put(caller, callerSession);
+    // Un callId que ya es de otra llamada (individual o grupal) se rechaza:
+    // reemplazarla dejaría al que llama dentro de una llamada ajena
+    private void startCall(String callId, String caller, String target, SessionState callerState) {
+        Map<String, SessionState> participants = new ConcurrentHashMap<>();
+        participants.put(caller, callerState);
+
+        SessionState targetState = userSessions.get(target);
+        if (targetState != null) {
+            participants.put(target, targetState);
+            GroupCallRegistry registry = groupCalls;
+            if ((registry != null && registry.groupOf(callId) != null)
+                    || activeCalls.putIfAbsent(callId, participants) != null) {
+                Log.warn(" Llamada rechazada: {} ya está en uso ({})", callId, caller);
+                rejectCall(callerState, callId);
+                return;
+            }
 
-        Session targetSession = userSessions.get(target);
-        if (targetSession != null) {
-            participants.put(target, targetSession);
-            activeCalls.put(callId, participants);
+            openVoiceActivity(callId);
 
             // Configurar callId en ambas sesiones
-            callerSession.getUserProperties().put("callId", callId);
-            callerSession.getUserProperties().put("callType", "individual");
-            targetSession.getUserProperties().put("callId", callId);
-            targetSession.getUserProperties().put("callType", "individual");
+            callerState.joinCall(callId, SessionState.CallType.INDIVIDUAL);
+            targetState.joinCall(callId, SessionState.CallType.INDIVIDUAL);
 
-            System.out.println(" Llamada iniciada: " + callId);
+            Log.info(" Llamada iniciada: {}", callId);
         }
     }
 
-    private void joinCall(String callId, String username, Session session) {
-        Map<String, Session> participants = activeCalls.get(callId);
-        if (participants != null) {
-            participants.put(username, session);
-            session.getUserProperties().put("callId", callId);
-            session.getUserProperties().put("callType", "group");
-            System.out.println(" Usuario unido a llamada: " + username + " -> " + callId);
+    private void joinCall(String callId, String username, SessionState joining) {
+        Map<String, SessionState> participants = activeCalls.get(callId);
+        if (participants == null) return;
+
+        GroupCallRegistry registry = groupCalls;
+        String groupName = registry != null ? registry.groupOf(callId) : null;
+        if (groupName != null) {
+            joinGroupCall(callId, groupName, username, joining);
+            return;
+        }
+        // Una llamada individual solo admite a sus dos participantes
+        if (!participants.containsKey(username)) {
+            rejectCall(joining, callId);
+            return;
         }
+        participants.put(username, joining);
+        joining.joinCall(callId, SessionState.CallType.INDIVIDUAL);
+        addToMixer(callId, username, joining);
+        Log.info(" Usuario unido a llamada: {} -> {}", username, callId);
     }
 
+    // Solo un participante puede terminar la llamada
     private void endCall(String callId, String username) {
-        Map<String, Session> participants = activeCalls.remove(callId);
+        Map<String, SessionState> participants = activeCalls.get(callId);
+        if (participants == null || !participants.containsKey(username)) return;
+
+        closeCall(callId);
+        GroupCallRegistry registry = groupCalls;
+        if (registry != null) {
+            registry.end(callId);
+        }
+    }
+
+    // Los participantes salen de la llamada antes de desmontarla: un frame que
+    // llegue entre medias ya no encuentra la llamada y no vuelve a crear
+    // sus jitter buffers
+    private static void closeCall(String callId) {
+        Map<String, SessionState> participants = activeCalls.remove(callId);
         if (participants != null) {
-            participants.forEach((user, session) -> {
-                session.getUserProperties().remove("callId");
-                session.getUserProperties().remove("callType");
+            participants.values().forEach(SessionState::leaveCall);
+        }
+        stopMixer(callId);
+        selectors.remove(callId);
+        stopJitterBuffers(callId);
+        voiceActivity.remove(callId);
+        // Por si un frame en vuelo creó buffers mientras se desmontaba la llamada
+        stopJitterBuffers(callId);
 
+        if (participants != null) {
+            ByteBuffer ended = ControlMessage.encode(ControlMessage.CALL_ENDED, callId);
+            participants.forEach((user, participantState) -> {
                 // Notificar fin de llamada
                 try {
-                    session.getBasicRemote().sendText("CALL_ENDED:" + callId);
+                    participantState.getSession().getBasicRemote().sendBinary(ended.duplicate());
                 } catch (IOException e) {
-                    System.err.println("Error notificando fin de llamada");
+                    Log.warn("Error notificando fin de llamada");
                 }
             });
-            System.out.println(" Llamada finalizada: " + callId);
+            Log.info(" Llamada finalizada: {}", callId);
         }
     }
 
-    private void startGroupCall(String callId, String initiator, Session initiatorSession) {
-        Map<String, Session> participants = new ConcurrentHashMap<>();
-        participants.put(initiator, initiatorSession);
-        activeCalls.put(callId, participants);
-
-        initiatorSession.getUserProperties().put("callId", callId);
-        initiatorSession.getUserProperties().put("callType", "group");
-
-        System.out.println(" Llamada grupal iniciada: " + callId);
-    }
-
     private void leaveGroupCall(String callId, String username) {
-        Map<String, Session> participants = activeCalls.get(callId);
+        Map<String, SessionState> participants = activeCalls.get(callId);
         if (participants != null) {
-            Session session = participants.remove(username);
-            if (session != null) {
-                session.getUserProperties().remove("callId");
-                session.getUserProperties().remove("callType");
+            SessionState leaving = participants.remove(username);
+            if (leaving != null) {
+                leaving.leaveCall();
             }
+            removeFromMixer(callId, username);
+            removeFromSelector(callId, username);
+            removeFromJitterBuffers(callId, username);
+            CallVoiceActivity vad = voiceActivity.get(callId);
+            if (vad != null) vad.removeSender(username);
 
             // Si no quedan participantes, eliminar la llamada
             if (participants.isEmpty()) {
                 activeCalls.remove(callId);
-                System.out.println(" Llamada grupal terminada: " + callId);
+                stopMixer(callId);
+                selectors.remove(callId);
+                stopJitterBuffers(callId);
+                voiceActivity.remove(callId);
+                stopJitterBuffers(callId);
+                Log.info(" Llamada grupal terminada: {}", callId);
             } else {
-                System.out.println(" Usuario salió de llamada grupal: " + username);
+                Log.info(" Usuario salió de llamada grupal: {}", username);
             }
         }
+        GroupCallRegistry registry = groupCalls;
+        if (registry != null) {
+            registry.leave(callId, username);
+        }
+    }
+
+    // ==================== MEZCLA EN SERVIDOR ====================
+
+    private void setCallMode(String callId, String mode, String maxSpeakers, String username) {
+        Map<String, SessionState> participants = activeCalls.get(callId);
+        if (participants == null || !participants.containsKey(username)) return;
+
+        if ("MIX".equals(mode)) {
+            AudioMixer mixer = new AudioMixer(callId);
+            if (mixers.putIfAbsent(callId, mixer) != null) return;
+            selectors.remove(callId);
+            participants.forEach((participant, participantState) -> addToMixer(callId, participant, participantState));
+            mixer.start();
+            Log.info(" Llamada {} en modo mezcla", callId);
+        } else if ("RELAY".equals(mode)) {
+            stopMixer(callId);
+            selectors.remove(callId);
+            Log.info(" Llamada {} en modo retransmisión", callId);
+        } else if ("SFU".equals(mode)) {
+            stopMixer(callId);
+            SpeakerSelector selector = new SpeakerSelector(parseMaxSpeakers(maxSpeakers));
+            selectors.put(callId, selector);
+            Log.info(" Llamada {} en modo SFU ({} hablantes por oyente)", callId, selector.getMaxSpeakers());
+        }
+    }
+
+    // ==================== SFU ====================
+
+    private void updateSubscription(byte opcode, String callId, String target, String username,
+                                    SessionState listener) {
+        SpeakerSelector selector = selectors.get(callId);
+        Map<String, SessionState> participants = activeCalls.get(callId);
+        if (selector == null || participants == null || !participants.containsKey(username)) return;
+
+        switch (opcode) {
+            case ControlMessage.SUBSCRIBE -> {
+                if (!selector.subscribe(username, target)) {
+                    // Ya tiene fijados tantos emisores como admite la llamada
+                    try {
+                        listener.getSession().getBasicRemote().sendBinary(
+                                ControlMessage.encode(ControlMessage.SUBSCRIBE_REJECTED, callId, target));
+                    } catch (IOException e) {
+                        Log.warn("Error notificando suscripción rechazada a {}", username);
+                    }
+                }
+            }
+            case ControlMessage.UNSUBSCRIBE -> selector.unsubscribe(username, target);
+            case ControlMessage.MUTE -> selector.mute(username, target);
+            case ControlMessage.UNMUTE -> selector.unmute(username, target);
+            default -> { }
+        }
+        Log.debug(" Preferencia {} de {} -> {} en {}", opcode, username, target, callId);
+    }
+
+    private void removeFromSelector(String callId, String username) {
+        SpeakerSelector selector = selectors.get(callId);
+        if (selector != null) {
+            selector.removeParticipant(username);
+        }
+    }
+
+    private static int parseMaxSpeakers(String value) {
+        if (value == null) return SpeakerSelector.DEFAULT_MAX_SPEAKERS;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return SpeakerSelector.DEFAULT_MAX_SPEAKERS;
+        }
+    }
+
+    private void addToMixer(String callId, String username, SessionState participant) {
+        AudioMixer mixer = mixers.get(callId);
+        if (mixer != null) {
+            mixer.addParticipant(username, participant.getAudioSender());
+        }
+    }
+
+    private void removeFromMixer(String callId, String username) {
+        AudioMixer mixer = mixers.get(callId);
+        if (mixer != null) {
+            mixer.removeParticipant(username);
+        }
+    }
+
+    private static void stopMixer(String callId) {
+        AudioMixer mixer = mixers.remove(callId);
+        if (mixer != null) {
+            mixer.stop();
+        }
+    }
+
+    // ==================== JITTER BUFFER ====================
+
+    private void removeFromJitterBuffers(String callId, String username) {
+        CallJitterBuffers buffers = jitterBuffers.get(callId);
+        if (buffers != null) {
+            buffers.removeSender(username);
+        }
+    }
+
+    private static void stopJitterBuffers(String callId) {
+        CallJitterBuffers buffers = jitterBuffers.remove(callId);
+        if (buffers != null) {
+            buffers.stop();
+            Log.info(" Estadísticas de audio, {}", buffers.describe());
+        }
+    }
+
+    // ==================== DETECCIÓN DE VOZ ====================
+
+    // Se crea al empezar la llamada y se quita al cerrarla
+    private static void openVoiceActivity(String callId) {
+        voiceActivity.computeIfAbsent(callId, id -> new CallVoiceActivity());
     }
 }
@@ -0,0 +1,103 @@
+package com.icesi.chatapp.websocket;
+
+import com.icesi.chatapp.metrics.Log;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+
+// Jitter buffers de todos los emisores de una llamada, vaciados a ritmo
+// constante por el reloj de audio hacia el destino (retransmisión o mezcla)
+public class CallJitterBuffers {
+
+    @FunctionalInterface
+    public interface FrameSink {
+        void onFrame(String callId, String sender, ByteBuffer payload);
+    }
+
+    private final String callId;
+    private final long frameMillis;
+    private final FrameSink sink;
+    private final Map<String, JitterBuffer> buffers = new ConcurrentHashMap<>();
+    private ScheduledFuture<?> clock;
+
+    public CallJitterBuffers(String callId, long frameMillis, FrameSink sink) {
+        this.callId = callId;
+        this.frameMillis = frameMillis;
+        this.sink = sink;
+    }
+
+    public synchronized void start() {
+        if (clock == null) {
+            clock = AudioClock.every(frameMillis, this::tick);
+        }
+    }
+
+    public synchronized void stop() {
+        if (clock != null) {
+            clock.cancel(false);
+            clock = null;
+        }
+    }
+
+    public void offer(String sender, ByteBuffer frame) {
+        JitterBuffer buffer = buffers.computeIfAbsent(sender, s -> new JitterBuffer(frameMillis));
+        buffer.offer(AudioFrame.sequence(frame), AudioFrame.timestamp(frame),
+                AudioFrame.payload(frame), System.currentTimeMillis());
+    }
+
+    public void removeSender(String sender) {
+        buffers.remove(sender);
+    }
+
+    private void tick() {
+        try {
+            buffers.forEach((sender, buffer) -> {
+                ByteBuffer frame = buffer.poll();
+                if (frame != null) {
+                    sink.onFrame(callId, sender, frame);
+                }
+            });
+        } catch (Exception e) {
+            Log.error(" Error en jitter buffer de {}: {}", callId, e.getMessage());
+        }
+    }
+
+    // ==================== ESTADÍSTICAS DE LA LLAMADA ====================
+
+    public long getLost() {
+        long total = 0;
+        for (JitterBuffer buffer : buffers.values()) total += buffer.getLost();
+        return total;
+    }
+
+    public long getLate() {
+        long total = 0;
+        for (JitterBuffer buffer : buffers.values()) total += buffer.getLate();
+        return total;
+    }
+
+    public long getReordered() {
+        long total = 0;
+        for (JitterBuffer buffer : buffers.values()) total += buffer.getReordered();
+        return total;
+    }
+
+    public long getDuplicates() {
+        long total = 0;
+        for (JitterBuffer buffer : buffers.values()) total += buffer.getDuplicates();
+        return total;
+    }
+
+    public double getMaxJitterMillis() {
+        double max = 0;
+        for (JitterBuffer buffer : buffers.values()) max = Math.max(max, buffer.getJitterMillis());
+        return max;
+    }
+
+    public String describe() {
+        return String.format("llamada %s: perdidos=%d tardíos=%d reordenados=%d duplicados=%d jitter=%.1fms",
+                callId, getLost(), getLate(), getReordered(), getDuplicates(), getMaxJitterMillis());
+    }
+}
@@ -0,0 +1,77 @@
+package com.icesi.chatapp.websocket;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Filtro de silencio de una llamada: decide qué frames se reenvían y mantiene
+// el conjunto de hablantes activos. Durante el silencio se deja pasar un frame
+// de cada KEEPALIVE_FRAMES, que lleva el ruido de fondo real del emisor y sirve
+// como ruido de confort para que el oyente no perciba la línea muerta.
+//
+// Los cambios del conjunto de hablantes se anuncian a los participantes como
+// mucho cada ANNOUNCE_MILLIS; un cambio pendiente sale con el siguiente frame.
+public class CallVoiceActivity {
+    private static final int KEEPALIVE_FRAMES = 8;
+    private static final long ANNOUNCE_MILLIS = 250;
+
+    private final Map<String, VoiceActivityDetector> detectors = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> silentRuns = new ConcurrentHashMap<>();
+    private final Set<String> activeSpeakers = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean speakersChanged = new AtomicBoolean();
+    private volatile long lastAnnounce;
+
+    private final AtomicLong framesIn = new AtomicLong();
+    private final AtomicLong framesSuppressed = new AtomicLong();
+
+    public boolean shouldForward(String sender, ByteBuffer pcm) {
+        framesIn.incrementAndGet();
+        VoiceActivityDetector detector = detectors.computeIfAbsent(sender, s -> new VoiceActivityDetector());
+        AtomicInteger silentRun = silentRuns.computeIfAbsent(sender, s -> new AtomicInteger());
+
+        if (detector.isSpeech(pcm)) {
+            if (activeSpeakers.add(sender)) speakersChanged.set(true);
+            silentRun.set(0);
+            return true;
+        }
+
+        if (activeSpeakers.remove(sender)) speakersChanged.set(true);
+        if (silentRun.incrementAndGet() % KEEPALIVE_FRAMES == 0) {
+            return true;
+        }
+        framesSuppressed.incrementAndGet();
+        return false;
+    }
+
+    public void removeSender(String sender) {
+        detectors.remove(sender);
+        silentRuns.remove(sender);
+        if (activeSpeakers.remove(sender)) speakersChanged.set(true);
+    }
+
+    // true si toca anunciar el conjunto de hablantes (y lo da por anunciado)
+    public boolean takeSpeakersChange(long nowMillis) {
+        if (nowMillis - lastAnnounce < ANNOUNCE_MILLIS) return false;
+        if (!speakersChanged.compareAndSet(true, false)) return false;
+        lastAnnounce = nowMillis;
+        return true;
+    }
+
+    // RMS del último frame del emisor, ya calculado por su detector
+    public double levelOf(String sender) {
+        VoiceActivityDetector detector = detectors.get(sender);
+        return detector != null ? detector.getLastLevel() : 0;
+    }
+
+    public Set<String> getActiveSpeakers() {
+        return Collections.unmodifiableSet(activeSpeakers);
+    }
+
+    public long getFramesIn() { return framesIn.get(); }
+    public long getFramesSuppressed() { return framesSuppressed.get(); }
+}
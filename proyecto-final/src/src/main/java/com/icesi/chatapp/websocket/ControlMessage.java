@@ -0,0 +1,101 @@
+package com.icesi.chatapp.websocket;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Mensajes de control del WebSocket de audio, en frames binarios:
+//   [0-1] magic 0xA5 0xC1   [2] opcode   [3] número de argumentos
+//   por argumento: [uint16 longitud (big-endian)][UTF-8]
+// Los argumentos van con su longitud, así que un callId o un nombre de grupo
+// puede contener cualquier carácter. Los frames de audio empiezan por 0xA5 0x01,
+// y un frame solo se acepta como control si las longitudes cuadran exactamente:
+// si no, se trata como audio (PCM crudo que empieza por el magic por azar).
+public final class ControlMessage {
+    public static final byte MAGIC_0 = (byte) 0xA5;
+    public static final byte MAGIC_1 = (byte) 0xC1;
+    private static final int HEADER_SIZE = 4;
+
+    // Cliente -> servidor
+    public static final byte START_CALL = 1;         // callId, destinatario
+    public static final byte JOIN_CALL = 2;          // callId
+    public static final byte END_CALL = 3;           // callId
+    public static final byte START_GROUP_CALL = 4;   // callId, grupo
+    public static final byte JOIN_GROUP_CALL = 5;    // callId, grupo
+    public static final byte LEAVE_GROUP_CALL = 6;   // callId, grupo
+    public static final byte SET_CALL_MODE = 7;      // callId, MIX|RELAY|SFU [, maxHablantes]
+    public static final byte SUBSCRIBE = 8;          // callId, emisor
+    public static final byte UNSUBSCRIBE = 9;        // callId, emisor
+    public static final byte MUTE = 10;              // callId, emisor
+    public static final byte UNMUTE = 11;            // callId, emisor
+
+    // Servidor -> cliente
+    public static final byte CALL_ENDED = 0x40;            // callId
+    public static final byte GROUP_CALL_INVITATION = 0x41; // callId, grupo, quien invita
+    public static final byte SUBSCRIBE_REJECTED = 0x42;    // callId, emisor
+    public static final byte CALL_REJECTED = 0x43;         // callId (no es miembro o no existe)
+    public static final byte ACTIVE_SPEAKERS = 0x44;       // callId, hablantes activos...
+
+    private final byte opcode;
+    private final String[] args;
+
+    private ControlMessage(byte opcode, String[] args) {
+        this.opcode = opcode;
+        this.args = args;
+    }
+
+    public byte getOpcode() { return opcode; }
+
+    public int getArgCount() { return args.length; }
+
+    // null si el mensaje no trae ese argumento
+    public String arg(int index) {
+        return index < args.length ? args[index] : null;
+    }
+
+    static boolean hasMagic(ByteBuffer frame) {
+        return frame.remaining() >= HEADER_SIZE
+                && frame.get(frame.position()) == MAGIC_0
+                && frame.get(frame.position() + 1) == MAGIC_1;
+    }
+
+    // null si el frame no es un mensaje de control completo y exacto
+    public static ControlMessage decode(ByteBuffer frame) {
+        if (!hasMagic(frame)) return null;
+
+        ByteBuffer in = frame.duplicate();
+        in.position(in.position() + 2);
+        byte opcode = in.get();
+        int argc = in.get() & 0xFF;
+        String[] args = new String[argc];
+        for (int i = 0; i < argc; i++) {
+            if (in.remaining() < 2) return null;
+            int length = in.getShort() & 0xFFFF;
+            if (in.remaining() < length) return null;
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            args[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        if (in.hasRemaining()) return null;
+        return new ControlMessage(opcode, args);
+    }
+
+    public static ByteBuffer encode(byte opcode, String... args) {
+        byte[][] encoded = new byte[args.length][];
+        int size = HEADER_SIZE;
+        for (int i = 0; i < args.length; i++) {
+            encoded[i] = args[i].getBytes(StandardCharsets.UTF_8);
+            if (encoded[i].length > 0xFFFF) {
+                throw new IllegalArgumentException("Argumento de control demasiado largo");
+            }
+            size += 2 + encoded[i].length;
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.put(MAGIC_0).put(MAGIC_1).put(opcode).put((byte) args.length);
+        for (byte[] arg : encoded) {
+            out.putShort((short) arg.length).put(arg);
+        }
+        out.flip();
+        return out;
+    }
+}
@@ -0,0 +1,152 @@
+package com.icesi.chatapp.websocket;
+
+import java.nio.ByteBuffer;
+
+// Jitter buffer adaptativo de un emisor dentro de una llamada. Reordena por
+// número de secuencia, descarta duplicados y frames tardíos, y entrega como
+// máximo un frame por tick. La profundidad objetivo se ajusta con la
+// estimación de jitter entre llegadas (como en RFC 3550).
+public class JitterBuffer {
+    private static final int CAPACITY = 16;
+    private static final int MAX_TARGET_DEPTH = CAPACITY / 2;
+    // Ticks seguidos sin frames antes de volver a llenar el buffer
+    private static final int MAX_EMPTY_TICKS = 2;
+
+    private final long frameMillis;
+    private final ByteBuffer[] slots = new ByteBuffer[CAPACITY];
+    private final long[] slotSequence = new long[CAPACITY];
+
+    private boolean playing;
+    private long nextSequence = -1;
+    private long highestSequence = -1;
+    // Último número de secuencia ya reproducido (o dado por perdido)
+    private long playedUpTo = -1;
+    private int buffered;
+    private int emptyTicks;
+
+    private boolean hasLast;
+    private long lastArrival;
+    private int lastTimestamp;
+    private double jitter;
+
+    private long received;
+    private long released;
+    private long lost;
+    private long late;
+    private long reordered;
+    private long duplicates;
+
+    public JitterBuffer(long frameMillis) {
+        this.frameMillis = frameMillis;
+    }
+
+    public synchronized void offer(int sequence32, int timestamp, ByteBuffer payload, long arrivalMillis) {
+        received++;
+        long sequence = extend(sequence32);
+
+        if (hasLast) {
+            long transit = (arrivalMillis - lastArrival) - (timestamp - lastTimestamp);
+            jitter += (Math.abs(transit) - jitter) / 16.0;
+        }
+        hasLast = true;
+        lastArrival = arrivalMillis;
+        lastTimestamp = timestamp;
+
+        if (sequence <= playedUpTo) {
+            late++;
+            return;
+        }
+
+        // Demasiado adelantado para el buffer: lo intermedio se da por perdido
+        if (nextSequence >= 0 && sequence - nextSequence >= CAPACITY) {
+            lost += sequence - nextSequence - buffered;
+            reset();
+        }
+
+        int slot = (int) (sequence % CAPACITY);
+        if (slots[slot] != null && slotSequence[slot] == sequence) {
+            duplicates++;
+            return;
+        }
+        if (sequence < highestSequence) {
+            reordered++;
+        }
+
+        slots[slot] = payload;
+        slotSequence[slot] = sequence;
+        buffered++;
+        highestSequence = Math.max(highestSequence, sequence);
+        if (nextSequence < 0 || (!playing && sequence < nextSequence)) {
+            nextSequence = sequence;
+        }
+    }
+
+    // Llamado en cada tick del reloj; devuelve null si no hay frame que reproducir
+    public synchronized ByteBuffer poll() {
+        if (!playing) {
+            if (buffered == 0 || buffered < targetDepth()) return null;
+            // Tras una pausa del emisor se retoma desde el frame más antiguo disponible
+            nextSequence = lowestBuffered();
+            playing = true;
+        }
+
+        if (buffered == 0) {
+            if (++emptyTicks > MAX_EMPTY_TICKS) {
+                playing = false;
+            }
+            return null;
+        }
+        emptyTicks = 0;
+
+        int slot = (int) (nextSequence % CAPACITY);
+        ByteBuffer frame = null;
+        if (slots[slot] != null && slotSequence[slot] == nextSequence) {
+            frame = slots[slot];
+            slots[slot] = null;
+            buffered--;
+            released++;
+        } else {
+            lost++;
+        }
+        playedUpTo = nextSequence;
+        nextSequence++;
+        return frame;
+    }
+
+    public synchronized int targetDepth() {
+        int depth = 1 + (int) Math.ceil(2 * jitter / frameMillis);
+        return Math.min(depth, MAX_TARGET_DEPTH);
+    }
+
+    private long lowestBuffered() {
+        long lowest = Long.MAX_VALUE;
+        for (int i = 0; i < CAPACITY; i++) {
+            if (slots[i] != null) lowest = Math.min(lowest, slotSequence[i]);
+        }
+        return lowest;
+    }
+
+    private void reset() {
+        for (int i = 0; i < CAPACITY; i++) {
+            slots[i] = null;
+        }
+        buffered = 0;
+        playing = false;
+        nextSequence = -1;
+    }
+
+    // Secuencia de 32 bits extendida a 64 para soportar el desbordamiento
+    private long extend(int sequence32) {
+        if (highestSequence < 0) return Integer.toUnsignedLong(sequence32);
+        int delta = sequence32 - (int) highestSequence;
+        return Math.max(0, highestSequence + delta);
+    }
+
+    public synchronized long getReceived() { return received; }
+    public synchronized long getReleased() { return released; }
+    public synchronized long getLost() { return lost; }
+    public synchronized long getLate() { return late; }
+    public synchronized long getReordered() { return reordered; }
+    public synchronized long getDuplicates() { return duplicates; }
+    public synchronized double getJitterMillis() { return jitter; }
+}
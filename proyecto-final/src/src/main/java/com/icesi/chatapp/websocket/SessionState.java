@@ -0,0 +1,40 @@
+package com.icesi.chatapp.websocket;
+
+import javax.websocket.Session;
+
+// Estado de una conexión de audio. El endpoint lo guarda en un campo (Tyrus
+// crea una instancia por conexión) y las llamadas lo guardan por participante,
+// así que cada frame cuesta leer un campo y no buscar en getUserProperties().
+public class SessionState {
+    public enum CallType { INDIVIDUAL, GROUP }
+
+    private final String username;
+    private final Session session;
+    private final AudioSender audioSender;
+
+    // Llamada en curso; null si no está en ninguna
+    private volatile String callId;
+    private volatile CallType callType;
+
+    public SessionState(String username, Session session, AudioSender audioSender) {
+        this.username = username;
+        this.session = session;
+        this.audioSender = audioSender;
+    }
+
+    public String getUsername() { return username; }
+    public Session getSession() { return session; }
+    public AudioSender getAudioSender() { return audioSender; }
+    public String getCallId() { return callId; }
+    public CallType getCallType() { return callType; }
+
+    public void joinCall(String callId, CallType callType) {
+        this.callId = callId;
+        this.callType = callType;
+    }
+
+    public void leaveCall() {
+        this.callId = null;
+        this.callType = null;
+    }
+}
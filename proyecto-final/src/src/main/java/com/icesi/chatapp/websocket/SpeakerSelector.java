@@ -0,0 +1,175 @@
+package com.icesi.chatapp.websocket;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Selección de hablantes para el modo SFU: a cada oyente solo se le reenvían
+// los maxSpeakers emisores con más nivel reciente, así el ancho de banda de
+// bajada no crece con el tamaño de la llamada. Cada oyente puede fijar
+// emisores (siempre se reenvían, ocupan lugar) y silenciar otros.
+//
+// El ranking se recalcula como mucho cada RESELECT_MILLIS y los que ya estaban
+// seleccionados tienen ventaja, para no saltar de un hablante a otro en cada
+// frame cuando hay dos con nivel parecido.
+public class SpeakerSelector {
+    public static final int DEFAULT_MAX_SPEAKERS = 3;
+    private static final long RESELECT_MILLIS = 200;
+    // Un emisor sin frames en este tiempo ya no compite
+    private static final long STALE_MILLIS = 1000;
+    private static final double LEVEL_SMOOTHING = 0.3;
+    private static final double HYSTERESIS = 1.5;
+
+    private final int maxSpeakers;
+    private final Map<String, Speaker> speakers = new ConcurrentHashMap<>();
+    private final Map<String, ListenerState> listeners = new ConcurrentHashMap<>();
+
+    // Emisores vigentes, de mayor a menor nivel; se reemplaza entero
+    private volatile String[] ranking = new String[0];
+    private volatile long rankingVersion;
+    private volatile long lastReselect;
+
+    public SpeakerSelector(int maxSpeakers) {
+        this.maxSpeakers = Math.max(1, maxSpeakers);
+    }
+
+    public int getMaxSpeakers() {
+        return maxSpeakers;
+    }
+
+    // Se llama con cada frame que pasó el filtro de silencio
+    public void onFrame(String sender, double level, long nowMillis) {
+        speakers.computeIfAbsent(sender, s -> new Speaker()).update(level, nowMillis);
+        if (nowMillis - lastReselect >= RESELECT_MILLIS) {
+            reselect(nowMillis);
+        }
+    }
+
+    public boolean shouldForward(String listener, String sender) {
+        return listenerState(listener).selection(listener, ranking, rankingVersion, maxSpeakers).contains(sender);
+    }
+
+    // ==================== PREFERENCIAS DEL OYENTE ====================
+
+    // false si el oyente ya tiene maxSpeakers fijados
+    public boolean subscribe(String listener, String sender) {
+        return listenerState(listener).pin(sender, maxSpeakers);
+    }
+
+    public void unsubscribe(String listener, String sender) {
+        listenerState(listener).unpin(sender);
+    }
+
+    public void mute(String listener, String sender) {
+        listenerState(listener).mute(sender);
+    }
+
+    public void unmute(String listener, String sender) {
+        listenerState(listener).unmute(sender);
+    }
+
+    public void removeParticipant(String username) {
+        speakers.remove(username);
+        listeners.remove(username);
+        listeners.values().forEach(state -> state.forget(username));
+    }
+
+    // ==================== RANKING ====================
+
+    private synchronized void reselect(long nowMillis) {
+        if (nowMillis - lastReselect < RESELECT_MILLIS) return;
+        lastReselect = nowMillis;
+
+        Set<String> previous = new HashSet<>(Arrays.asList(ranking).subList(0, Math.min(maxSpeakers, ranking.length)));
+        List<String> candidates = new ArrayList<>();
+        Map<String, Double> scores = new HashMap<>();
+        speakers.forEach((sender, speaker) -> {
+            if (nowMillis - speaker.lastFrameMillis > STALE_MILLIS) return;
+            double score = speaker.level * (previous.contains(sender) ? HYSTERESIS : 1.0);
+            candidates.add(sender);
+            scores.put(sender, score);
+        });
+        // Mayor nivel primero; a igual nivel, el que habló más recientemente
+        candidates.sort((a, b) -> {
+            int byScore = Double.compare(scores.get(b), scores.get(a));
+            return byScore != 0 ? byScore
+                    : Long.compare(speakers.get(b).lastFrameMillis, speakers.get(a).lastFrameMillis);
+        });
+
+        String[] updated = candidates.toArray(new String[0]);
+        if (!Arrays.equals(updated, ranking)) {
+            ranking = updated;
+            rankingVersion++;
+        }
+    }
+
+    private ListenerState listenerState(String listener) {
+        return listeners.computeIfAbsent(listener, l -> new ListenerState());
+    }
+
+    private static class Speaker {
+        volatile double level;
+        volatile long lastFrameMillis;
+
+        synchronized void update(double frameLevel, long nowMillis) {
+            level += (frameLevel - level) * LEVEL_SMOOTHING;
+            lastFrameMillis = nowMillis;
+        }
+    }
+
+    // Fijados, silenciados y la selección calculada para la última versión del ranking
+    private static class ListenerState {
+        private final Set<String> pinned = new HashSet<>();
+        private final Set<String> muted = new HashSet<>();
+        private Set<String> selection = Collections.emptySet();
+        private long selectionVersion = -1;
+        private boolean dirty = true;
+
+        synchronized Set<String> selection(String self, String[] ranking, long version, int limit) {
+            if (!dirty && version == selectionVersion) return selection;
+
+            Set<String> selected = new HashSet<>(pinned);
+            for (String sender : ranking) {
+                if (selected.size() >= limit) break;
+                if (sender.equals(self) || muted.contains(sender)) continue;
+                selected.add(sender);
+            }
+            selection = selected;
+            selectionVersion = version;
+            dirty = false;
+            return selection;
+        }
+
+        synchronized boolean pin(String sender, int maxSpeakers) {
+            if (!pinned.contains(sender) && pinned.size() >= maxSpeakers) return false;
+            pinned.add(sender);
+            muted.remove(sender);
+            dirty = true;
+            return true;
+        }
+
+        synchronized void unpin(String sender) {
+            dirty |= pinned.remove(sender);
+        }
+
+        synchronized void mute(String sender) {
+            pinned.remove(sender);
+            muted.add(sender);
+            dirty = true;
+        }
+
+        synchronized void unmute(String sender) {
+            dirty |= muted.remove(sender);
+        }
+
+        synchronized void forget(String sender) {
+            dirty |= pinned.remove(sender) | muted.remove(sender);
+        }
+    }
+}
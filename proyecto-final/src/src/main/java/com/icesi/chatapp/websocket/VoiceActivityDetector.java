@@ -0,0 +1,56 @@
+package com.icesi.chatapp.websocket;
+
+import java.nio.ByteBuffer;
+
+// Detector de actividad de voz por energía para PCM de 16 bits LE. El umbral
+// sigue el ruido de fondo del emisor y se mantiene activo unos frames después
+// de la última voz para no cortar finales de palabra.
+public class VoiceActivityDetector {
+    // RMS mínimo considerado voz (sobre 32768)
+    private static final double MIN_THRESHOLD = 300;
+    private static final double NOISE_MULTIPLIER = 3.0;
+    private static final double NOISE_SMOOTHING = 0.05;
+    private static final int HANGOVER_FRAMES = 2;
+
+    private double noiseFloor = MIN_THRESHOLD / NOISE_MULTIPLIER;
+    private int hangover;
+    private volatile double lastLevel;
+
+    public synchronized boolean isSpeech(ByteBuffer pcm) {
+        double rms = rms(pcm);
+        lastLevel = rms;
+        boolean speech = rms > Math.max(MIN_THRESHOLD, noiseFloor * NOISE_MULTIPLIER);
+
+        if (speech) {
+            hangover = HANGOVER_FRAMES;
+            return true;
+        }
+        // Solo los frames silenciosos ajustan el ruido de fondo
+        noiseFloor += (rms - noiseFloor) * NOISE_SMOOTHING;
+        if (hangover > 0) {
+            hangover--;
+            return true;
+        }
+        return false;
+    }
+
+    // RMS del último frame analizado
+    public double getLastLevel() {
+        return lastLevel;
+    }
+
+    static double rms(ByteBuffer pcm) {
+        int base = pcm.position();
+        int samples = pcm.remaining() / 2;
+        if (samples == 0) return 0;
+
+        long sum = 0;
+        for (int i = 0; i < samples; i++) {
+            int lo = pcm.get(base + 2 * i) & 0xFF;
+            int hi = pcm.get(base + 2 * i + 1);
+            int sample = (short) ((hi << 8) | lo);
+            sum += (long) sample * sample;
+        }
+        return Math.sqrt((double) sum / samples);
+    }
+}
@@ -26,12 +26,14 @@
 
     Chat.Message = class
     {
-        constructor(sender = "", content = "", timestamp = "", type = "")
+        constructor(sender = "", content = "", timestamp = "", type = "", epochMillis = new Ice.Long(0, 0), seq = new Ice.Long(0, 0))
         {
             this.sender = sender;
             this.content = content;
             this.timestamp = timestamp;
             this.type = type;
+            this.epochMillis = epochMillis;
+            this.seq = seq;
         }
 
         _write(ostr)
@@ -40,6 +42,8 @@
             ostr.writeString(this.content);
             ostr.writeString(this.timestamp);
             ostr.writeString(this.type);
+            ostr.writeLong(this.epochMillis);
+            ostr.writeLong(this.seq);
         }
 
         _read(istr)
@@ -48,11 +52,13 @@
             this.content = istr.readString();
             this.timestamp = istr.readString();
             this.type = istr.readString();
+            this.epochMillis = istr.readLong();
+            this.seq = istr.readLong();
         }
 
         static get minWireSize()
         {
-            return  4;
+            return  20;
         }
     };
 
@@ -60,10 +66,42 @@
 
     Slice.defineSequence(Chat, "MessageSeqHelper", "Chat.Message", false);
 
+    Chat.SearchResult = class
+    {
+        constructor(message = new Chat.Message(), conversation = "")
+        {
+            this.message = message;
+            this.conversation = conversation;
+        }
+
+        _write(ostr)
+        {
+            Chat.Message.write(ostr, this.message);
+            ostr.writeString(this.conversation);
+        }
+
+        _read(istr)
+        {
+            this.message = Chat.Message.read(istr, this.message);
+            this.conversation = istr.readString();
+        }
+
+        static get minWireSize()
+        {
+            return  5;
+        }
+    };
+
+    Slice.defineStruct(Chat.SearchResult, true, true);
+
+    Slice.defineSequence(Chat, "SearchResultSeqHelper", "Chat.SearchResult", false);
+
     Slice.defineSequence(Chat, "StringSeqHelper", "Ice.StringHelper", false);
 
     Slice.defineSequence(Chat, "AudioDataHelper", "Ice.ByteHelper", true);
 
+    Slice.defineSequence(Chat, "AudioChunkHelper", "Ice.ByteHelper", true);
+
     const iceC_Chat_ChatCallback_ids = [
         "::Chat::ChatCallback",
         "::Ice::Object"
@@ -80,10 +118,12 @@
     Slice.defineOperations(Chat.ChatCallback, Chat.ChatCallbackPrx, iceC_Chat_ChatCallback_ids, 0,
     {
         "onMessageReceived": [, , , , , [[Chat.Message]], , , , ],
+        "onMessagesBatch": [, , , , , [["Chat.MessageSeqHelper"]], , , , ],
         "onUserJoined": [, , , , , [[7]], , , , ],
         "onUserLeft": [, , , , , [[7]], , , , ],
         "onGroupCreated": [, , , , , [[7], [7]], , , , ],
         "onAudioReceived": [, , , , , [[7], ["Chat.AudioDataHelper"], [7]], , , , ],
+        "onAudioAvailable": [, , , , , [[7], [7], [4]], , , , ],
         "onCallRequest": [, , , , , [[7], [7]], , , , ],
         "onCallAccepted": [, , , , , [[7], [7]], , , , ],
         "onCallRejected": [, , , , , [[7]], , , , ],
@@ -114,13 +154,23 @@
         "listUsers": [, , , , ["Chat.StringSeqHelper"], , , , , ],
         "sendPrivateMessage": [, , , , [1], [[7], [7], [7]], , , , ],
         "getPrivateHistory": [, , , , ["Chat.MessageSeqHelper"], [[7], [7]], , , , ],
+        "getPrivateHistoryPage": [, , , , ["Chat.MessageSeqHelper"], [[7], [7], [4], [4], [3]], , , , ],
         "createGroup": [, , , , [1], [[7], [7]], , , , ],
         "addUserToGroup": [, , , , [1], [[7], [7]], , , , ],
         "sendGroupMessage": [, , , , [1], [[7], [7], [7]], , , , ],
         "getGroupHistory": [, , , , ["Chat.MessageSeqHelper"], [[7]], , , , ],
+        "getGroupHistoryPage": [, , , , ["Chat.MessageSeqHelper"], [[7], [4], [4], [3]], , , , ],
+        "searchMessages": [, , , , ["Chat.SearchResultSeqHelper"], [[7], [7], [3]], , , , ],
         "listMyGroups": [, , , , ["Chat.StringSeqHelper"], [[7]], , , , ],
         "sendAudioMessage": [, , , , [1], [[7], [7], ["Chat.AudioDataHelper"], [7]], , , , ],
         "sendGroupAudioMessage": [, , , , [1], [[7], [7], ["Chat.AudioDataHelper"], [7]], , , , ],
+        "beginAudioUpload": [, , , , [7], [[7]], , , , ],
+        "appendAudioChunk": [, , , , [1], [[7], [4], ["Chat.AudioDataHelper"]], , , , ],
+        "commitAudioUpload": [, , , , [1], [[7], [7], [7]], , , , ],
+        "commitGroupAudioUpload": [, , , , [1], [[7], [7], [7]], , , , ],
+        "fetchAudio": [, , , , ["Chat.AudioChunkHelper"], [[7], [4], [3]], , , , ],
+        "forwardAudio": [, , , , [1], [[7], [7], [7]], , , , ],
+        "forwardGroupAudio": [, , , , [1], [[7], [7], [7]], , , , ],
         "initiateCall": [, , , , [1], [[7], [7], [7]], , , , ],
         "acceptCall": [, , , , [1], [[7], [7], [7]], , , , ],
         "rejectCall": [, , , , [1], [[7], [7]], , , , ],
@@ -128,7 +178,7 @@
         "initiateGroupCall": [, , , , [1], [[7], [7], [7]], , , , ],
         "joinGroupCall": [, , , , [1], [[7], [7], [7]], , , , ],
         "leaveGroupCall": [, , , , [1], [[7], [7], [7]], , , , ],
-        "endGroupCall": [, , , , [1], [[7], [7]], , , , ],
+        "endGroupCall": [, , , , [1], [[7], [7], [7]], , , , ],
         "streamCallAudio": [, , , , [1], [[7], [7], ["Chat.AudioDataHelper"]], , , , ],
         "streamGroupCallAudio": [, , , , [1], [[7], [7], ["Chat.AudioDataHelper"]], , , , ]
     });
@@ -450,10 +450,12 @@ window.login = async function() {
     // Conectar Ice
     await iceDelegate.init(username, {
       onMessageReceived: handleMessageReceived,
+      onMessagesBatch: handleMessagesBatch,
       onUserJoined: handleUserJoined,
       onUserLeft: handleUserLeft,
       onGroupCreated: handleGroupCreated,
       onAudioReceived: handleAudioReceived,
+      onAudioAvailable: handleAudioAvailable,
       onCallRequest: handleCallRequest,
       onCallAccepted: handleCallAccepted,
       onCallRejected: handleCallRejected,
@@ -703,6 +705,11 @@ function handleMessageReceived(msg) {
   }
 }
 
+function handleMessagesBatch(messages) {
+  console.log('Mensajes pendientes:', messages.length);
+  messages.forEach(handleMessageReceived);
+}
+
 function handleUserJoined(username) {
   console.log('Usuario conectado:', username);
   
@@ -750,6 +757,15 @@ function handleAudioReceived(from, audioData, audioId) {
   displayMessage(msg);
 }
 
+async function handleAudioAvailable(from, audioId, size) {
+  try {
+    const audioData = await iceDelegate.fetchAudio(audioId, size);
+    handleAudioReceived(from, audioData, audioId);
+  } catch (err) {
+    console.error('Error descargando nota de voz:', err);
+  }
+}
+
 // ==================== GRUPOS ====================
 
 window.showCreateGroup = function() {
@@ -794,14 +810,14 @@ window.recordAudio = async function() {
       const blob = new Blob(chunks, { type: mimeType });
       const arrayBuffer = await blob.arrayBuffer();
       const audioData = new Uint8Array(arrayBuffer);
-      const audioId = 'audio_' + Date.now();
 
       const { type, name } = state.activeChat;
 
+      let audioId;
       if (type === 'user') {
-        await iceDelegate.sendAudioMessage(name, audioData, audioId);
+        audioId = await iceDelegate.sendAudioNote(name, audioData);
       } else if (type === 'group') {
-        await iceDelegate.sendGroupAudioMessage(name, audioData, audioId);
+        audioId = await iceDelegate.sendGroupAudioNote(name, audioData);
       }
 
       const msg = {
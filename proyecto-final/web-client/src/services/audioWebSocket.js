@@ -1,9 +1,69 @@
+// Puerto del WebSocket de audio del nodo al que se conecta: ?audioPort=9198
+const AUDIO_PORT = new URLSearchParams(window.location.search).get('audioPort') || '9098';
+
+// Mensajes de control en frames binarios (ver ControlMessage en el servidor):
+// magic 0xA5 0xC1, opcode, número de argumentos y cada argumento como
+// uint16 big-endian de longitud + UTF-8
+const CONTROL = {
+  START_CALL: 1,
+  JOIN_CALL: 2,
+  END_CALL: 3,
+  START_GROUP_CALL: 4,
+  JOIN_GROUP_CALL: 5,
+  LEAVE_GROUP_CALL: 6,
+  SET_CALL_MODE: 7,
+  SUBSCRIBE: 8,
+  UNSUBSCRIBE: 9,
+  MUTE: 10,
+  UNMUTE: 11,
+  CALL_ENDED: 0x40,
+  GROUP_CALL_INVITATION: 0x41,
+  SUBSCRIBE_REJECTED: 0x42,
+  CALL_REJECTED: 0x43,
+  ACTIVE_SPEAKERS: 0x44,
+};
+
+function encodeControl(opcode, ...args) {
+  const encoder = new TextEncoder();
+  const encoded = args.map((arg) => encoder.encode(String(arg)));
+  const size = 4 + encoded.reduce((total, bytes) => total + 2 + bytes.length, 0);
+  const frame = new Uint8Array(size);
+  const view = new DataView(frame.buffer);
+  frame.set([0xA5, 0xC1, opcode, encoded.length]);
+  let offset = 4;
+  for (const bytes of encoded) {
+    view.setUint16(offset, bytes.length);
+    frame.set(bytes, offset + 2);
+    offset += 2 + bytes.length;
+  }
+  return frame;
+}
+
+// null si no es un mensaje de control
+function decodeControl(buffer) {
+  const bytes = new Uint8Array(buffer);
+  if (bytes.length < 4 || bytes[0] !== 0xA5 || bytes[1] !== 0xC1) return null;
+  const view = new DataView(buffer);
+  const decoder = new TextDecoder();
+  const args = [];
+  let offset = 4;
+  for (let i = 0; i < bytes[3]; i++) {
+    if (offset + 2 > bytes.length) return null;
+    const length = view.getUint16(offset);
+    if (offset + 2 + length > bytes.length) return null;
+    args.push(decoder.decode(bytes.subarray(offset + 2, offset + 2 + length)));
+    offset += 2 + length;
+  }
+  return offset === bytes.length ? { opcode: bytes[2], args } : null;
+}
+
 class AudioWebSocket {
   constructor() {
     this.ws = null;
     this.username = null;
     this.onAudioReceived = null;
     this.onGroupCallInvitation = null;  // ← AGREGAR
+    this.audioSequence = 0;
   }
 
   connect(username, onAudioCallback, onGroupCallCallback) {  // ← MODIFICAR
@@ -11,7 +71,7 @@ class AudioWebSocket {
     this.onAudioReceived = onAudioCallback;
     this.onGroupCallInvitation = onGroupCallCallback;  // ← AGREGAR
 
-    this.ws = new WebSocket(`ws://localhost:9098/ws/audio/${username}`);
+    this.ws = new WebSocket(`ws://localhost:${AUDIO_PORT}/ws/audio/${username}`);
     this.ws.binaryType = 'arraybuffer';
 
     this.ws.onopen = () => {
@@ -19,26 +79,31 @@ class AudioWebSocket {
     };
 
     this.ws.onmessage = (event) => {
-      if (typeof event.data === 'string') {
-        console.log('📩 Mensaje de control:', event.data);
+      const control = decodeControl(event.data);
+      if (control) {
+        // Los hablantes activos llegan varias veces por segundo
+        if (control.opcode !== CONTROL.ACTIVE_SPEAKERS) {
+          console.log('📩 Mensaje de control:', control.opcode, control.args);
+        }
 
-        if (event.data.startsWith('CALL_ENDED')) {
+        if (control.opcode === CONTROL.CALL_ENDED) {
           window.handleCallEndedFromWS?.();
-        } else if (event.data.startsWith('GROUP_CALL_INVITATION')) {
-          // ← AGREGAR ESTO
-          // Formato: GROUP_CALL_INVITATION:callId:groupName:from
-          const parts = event.data.split(':');
-          if (parts.length >= 4) {
-            const callId = parts[1];
-            const groupName = parts[2];
-            const from = parts[3];
-            if (this.onGroupCallInvitation) {
-              this.onGroupCallInvitation(from, groupName, callId);
-            }
+        } else if (control.opcode === CONTROL.GROUP_CALL_INVITATION) {
+          // Argumentos: callId, groupName, from
+          const [callId, groupName, from] = control.args;
+          if (this.onGroupCallInvitation) {
+            this.onGroupCallInvitation(from, groupName, callId);
           }
-        } else if (event.data.startsWith('GROUP_CALL_ENDED')) {
-          // ← AGREGAR ESTO
+        } else if (control.opcode === CONTROL.CALL_REJECTED) {
+          // No es miembro del grupo o la llamada ya no existe
+          console.warn('Llamada rechazada por el servidor:', control.args[0]);
           window.handleCallEndedFromWS?.();
+        } else if (control.opcode === CONTROL.SUBSCRIBE_REJECTED) {
+          console.warn('Suscripción rechazada, límite de hablantes alcanzado:', control.args[1]);
+        } else if (control.opcode === CONTROL.ACTIVE_SPEAKERS) {
+          // Argumentos: callId y los usuarios que están hablando ahora
+          const [callId, ...speakers] = control.args;
+          window.handleActiveSpeakersFromWS?.(callId, speakers);
         }
       } else {
         // Audio binario PCM
@@ -60,20 +125,20 @@ class AudioWebSocket {
 
   startCall(callId, targetUser) {
     if (this.ws && this.ws.readyState === WebSocket.OPEN) {
-      this.ws.send(`START_CALL:${callId}:${targetUser}`);
+      this.ws.send(encodeControl(CONTROL.START_CALL, callId, targetUser));
       console.log('📤 Señal START_CALL enviada');
     }
   }
 
   joinCall(callId) {
     if (this.ws && this.ws.readyState === WebSocket.OPEN) {
-      this.ws.send(`JOIN_CALL:${callId}`);
+      this.ws.send(encodeControl(CONTROL.JOIN_CALL, callId));
     }
   }
 
   endCall(callId) {
     if (this.ws && this.ws.readyState === WebSocket.OPEN) {
-      this.ws.send(`END_CALL:${callId}`);
+      this.ws.send(encodeControl(CONTROL.END_CALL, callId));
       console.log('📤 Señal END_CALL enviada');
     }
   }
@@ -81,28 +146,57 @@ class AudioWebSocket {
   // ← AGREGAR MÉTODOS GRUPALES
   startGroupCall(callId, groupName) {
     if (this.ws && this.ws.readyState === WebSocket.OPEN) {
-      this.ws.send(`START_GROUP_CALL:${callId}:${groupName}`);
+      this.ws.send(encodeControl(CONTROL.START_GROUP_CALL, callId, groupName));
       console.log('📤 Señal START_GROUP_CALL enviada');
     }
   }
 
   joinGroupCall(callId, groupName) {
     if (this.ws && this.ws.readyState === WebSocket.OPEN) {
-      this.ws.send(`JOIN_GROUP_CALL:${callId}:${groupName}`);
+      this.ws.send(encodeControl(CONTROL.JOIN_GROUP_CALL, callId, groupName));
       console.log('📤 Señal JOIN_GROUP_CALL enviada');
     }
   }
 
   leaveGroupCall(callId, groupName) {
     if (this.ws && this.ws.readyState === WebSocket.OPEN) {
-      this.ws.send(`LEAVE_GROUP_CALL:${callId}:${groupName}`);
+      this.ws.send(encodeControl(CONTROL.LEAVE_GROUP_CALL, callId, groupName));
       console.log('📤 Señal LEAVE_GROUP_CALL enviada');
     }
   }
 
+  // mode: 'MIX' (el servidor mezcla y envía un solo stream), 'RELAY' o
+  // 'SFU' (solo los maxSpeakers que más hablan, por defecto 3)
+  setCallMode(callId, mode, maxSpeakers) {
+    if (this.ws && this.ws.readyState === WebSocket.OPEN) {
+      const args = mode === 'SFU' && maxSpeakers ? [callId, mode, maxSpeakers] : [callId, mode];
+      this.ws.send(encodeControl(CONTROL.SET_CALL_MODE, ...args));
+    }
+  }
+
+  // En modo SFU: action es 'SUBSCRIBE' (recibir siempre a ese emisor),
+  // 'UNSUBSCRIBE', 'MUTE' o 'UNMUTE'
+  setSpeakerPreference(callId, action, sender) {
+    if (this.ws && this.ws.readyState === WebSocket.OPEN) {
+      this.ws.send(encodeControl(CONTROL[action], callId, sender));
+    }
+  }
+
+  // Cabecera de 12 bytes (big-endian): magic 0xA5 0x01, codec, flags,
+  // secuencia uint32 y timestamp de captura en ms uint32
   sendAudio(audioData) {
     if (this.ws && this.ws.readyState === WebSocket.OPEN) {
-      this.ws.send(audioData);
+      const frame = new Uint8Array(12 + audioData.byteLength);
+      const header = new DataView(frame.buffer);
+      header.setUint8(0, 0xA5);
+      header.setUint8(1, 0x01);
+      header.setUint8(2, 0);  // PCM 16 bits, 16 kHz, mono
+      header.setUint8(3, 0);
+      header.setUint32(4, this.audioSequence);
+      header.setUint32(8, Math.floor(performance.now()) >>> 0);
+      frame.set(audioData, 12);
+      this.audioSequence = (this.audioSequence + 1) >>> 0;
+      this.ws.send(frame);
     }
   }
 
@@ -1,3 +1,12 @@
+const AUDIO_CHUNK_SIZE = 64 * 1024;
+// Con varios nodos cada uno escucha en otro puerto: ?icePort=9199
+const ICE_PORT = new URLSearchParams(window.location.search).get('icePort') || '9099';
+
+// Campo del cursor de paginación tomado del mensaje más antiguo (0 sin mensaje)
+function pageCursor(message, field) {
+  return message ? message[field] : new Ice.Long(0);
+}
+
 class IceDelegate {
   constructor() {
     this.communicator = null;
@@ -21,7 +30,7 @@ class IceDelegate {
     console.log('[IceDelegate] Communicator creado');
 
     const proxy = this.communicator.stringToProxy(
-      'ChatService:ws -h localhost -p 9099'
+      `ChatService:ws -h localhost -p ${ICE_PORT}`
     );
 
     this.chatService = await Chat.ChatServicePrx.checkedCast(proxy);
@@ -41,6 +50,15 @@ class IceDelegate {
         this.delegate.callbacks.onMessageReceived?.(msg);
       }
 
+      // Pendientes del buzón al reconectarse
+      onMessagesBatch(messages) {
+        if (this.delegate.callbacks.onMessagesBatch) {
+          this.delegate.callbacks.onMessagesBatch(messages);
+        } else {
+          messages.forEach(msg => this.delegate.callbacks.onMessageReceived?.(msg));
+        }
+      }
+
       onUserJoined(username) {
         this.delegate.callbacks.onUserJoined?.(username);
       }
@@ -57,6 +75,10 @@ class IceDelegate {
         this.delegate.callbacks.onAudioReceived?.(from, audioData, audioId);
       }
 
+      onAudioAvailable(from, audioId, size) {
+        this.delegate.callbacks.onAudioAvailable?.(from, audioId, size.toNumber());
+      }
+
       // Callbacks de llamadas (solo señalización)
       onCallRequest(from, callId) {
         this.delegate.callbacks.onCallRequest?.(from, callId);
@@ -157,6 +179,12 @@ class IceDelegate {
     return this.chatService.getPrivateHistory(this.username, otherUser);
   }
 
+  // oldest: el mensaje más antiguo ya mostrado (null = los más recientes)
+  async getPrivateHistoryPage(otherUser, oldest, limit) {
+    return this.chatService.getPrivateHistoryPage(this.username, otherUser,
+      pageCursor(oldest, 'epochMillis'), pageCursor(oldest, 'seq'), limit);
+  }
+
   // Grupos
   async createGroup(groupName) {
     return this.chatService.createGroup(groupName, this.username);
@@ -174,6 +202,16 @@ class IceDelegate {
     return this.chatService.getGroupHistory(groupName);
   }
 
+  async getGroupHistoryPage(groupName, oldest, limit) {
+    return this.chatService.getGroupHistoryPage(groupName,
+      pageCursor(oldest, 'epochMillis'), pageCursor(oldest, 'seq'), limit);
+  }
+
+  // Cada resultado trae { message, conversation }: el otro usuario o el grupo
+  async searchMessages(query, limit = 50) {
+    return this.chatService.searchMessages(this.username, query, limit);
+  }
+
   // Notas de voz (NO llamadas)
   async sendAudioMessage(to, audioData, audioId) {
     return this.chatService.sendAudioMessage(this.username, to, audioData, audioId);
@@ -183,6 +221,56 @@ class IceDelegate {
     return this.chatService.sendGroupAudioMessage(this.username, groupName, audioData, audioId);
   }
 
+  // Notas de voz por partes: se suben en trozos y el receptor las descarga por rangos
+  async uploadAudio(audioData) {
+    const audioId = await this.chatService.beginAudioUpload(this.username);
+    if (!audioId) {
+      throw new Error('No se pudo iniciar la subida de audio');
+    }
+
+    for (let offset = 0; offset < audioData.length; offset += AUDIO_CHUNK_SIZE) {
+      const chunk = audioData.subarray(offset, offset + AUDIO_CHUNK_SIZE);
+      const ok = await this.chatService.appendAudioChunk(audioId, new Ice.Long(offset), chunk);
+      if (!ok) {
+        throw new Error('Error subiendo audio');
+      }
+    }
+    return audioId;
+  }
+
+  async sendAudioNote(to, audioData) {
+    const audioId = await this.uploadAudio(audioData);
+    await this.chatService.commitAudioUpload(this.username, to, audioId);
+    return audioId;
+  }
+
+  async sendGroupAudioNote(groupName, audioData) {
+    const audioId = await this.uploadAudio(audioData);
+    await this.chatService.commitGroupAudioUpload(this.username, groupName, audioId);
+    return audioId;
+  }
+
+  // Reenviar una nota ya subida no vuelve a transferir el audio
+  async forwardAudio(to, audioId) {
+    return this.chatService.forwardAudio(this.username, to, audioId);
+  }
+
+  async forwardGroupAudio(groupName, audioId) {
+    return this.chatService.forwardGroupAudio(this.username, groupName, audioId);
+  }
+
+  async fetchAudio(audioId, size) {
+    const audioData = new Uint8Array(size);
+    let offset = 0;
+    while (offset < size) {
+      const chunk = await this.chatService.fetchAudio(audioId, new Ice.Long(offset), AUDIO_CHUNK_SIZE);
+      if (chunk.length === 0) break;
+      audioData.set(chunk, offset);
+      offset += chunk.length;
+    }
+    return audioData.subarray(0, offset);
+  }
+
   // Señalización de llamadas (solo notificación, audio va por WebSocket)
   async initiateCall(to, callId) {
     return this.chatService.initiateCall(this.username, to, callId);